@@ -0,0 +1,492 @@
+package io.com.didingapp.Volley;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.StringRequest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read endpoints served over GET through a queue backed by an on-disk HTTP
+ * cache, so list screens revalidate instead of re-downloading, and the
+ * bid/auction writes, which go through the {@link Outbox}. Both share one
+ * {@link RequestScheduler}, so a bid is never stuck behind list traffic.
+ *
+ * Those routes are only used with {@link #backendRoutes} set; until the
+ * backend serves them, each call goes to its VolleyApi method as before.
+ * The photo routes (batch, link, chunked upload, renditions) have no such
+ * counterpart: without the flag a photo is sent whole through
+ * {@link #insertAuctionImg}, and the callers must not use the others.
+ *
+ * The reads take the columns the caller uses as trailing field names; the
+ * server then selects and sends only those, so a list does not carry the
+ * description and a profile check not the photo. With none given every
+ * column comes back.
+ *
+ * {@link #baseUrl} can be pointed at the local stand-in server
+ * (standin_server.py) for testing.
+ */
+public class ApiClient {
+
+    private static final int DISK_CACHE_BYTES = 10 * 1024 * 1024;
+    private static final String BID_PATH = "Biding/insert";
+    private static final String LOGIN_CHECK_PATH = "Login/check";
+    private static final String IMAGE_BATCH_PATH = "Image/batch";
+    private static final String IMAGE_LINK_PATH = "Image/link";
+    private static final String IMAGE_RENDITIONS_PATH = "Image/renditions";
+
+    public static String baseUrl = VolleyApi.BASE_URL;
+
+    /**
+     * Whether the backend at {@link #baseUrl} serves the routes this class
+     * adds (standin_server.py does). Off, reads and writes go through the
+     * VolleyApi routes the app has always used: no revalidation, paging,
+     * deltas or field lists, and every list comes back whole in one page.
+     */
+    public static boolean backendRoutes;
+
+    /**
+     * Transport settings, read once when the queue is built. httpStack
+     * replaces the pooled OkHttp transport altogether, e.g. with a HurlStack
+     * for comparison; poolSize and idleTimeoutMillis size the default pool.
+     */
+    public static BaseHttpStack httpStack;
+    public static int poolSize = 5;
+    public static long idleTimeoutMillis = 5 * 60 * 1000;
+
+    private static ApiClient instance;
+    private final RequestScheduler scheduler;
+
+    private ApiClient(Context context) {
+        File cacheDir = new File(context.getCacheDir(), "api");
+        RequestQueue requestQueue = new RequestQueue(new DiskBasedCache(cacheDir, DISK_CACHE_BYTES),
+                new BasicNetwork(new MeteredStack(transport())), RequestScheduler.threadPoolSize());
+        scheduler = new RequestScheduler(requestQueue);
+        requestQueue.start();
+    }
+
+    public static synchronized ApiClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApiClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private static BaseHttpStack transport() {
+        if (httpStack != null) {
+            return httpStack;
+        }
+        return new OkHttpStack(OkHttpStack.pooledClient(poolSize, idleTimeoutMillis));
+    }
+
+    public void UpcomingBiding(Activity activity, VolleyApi.ResponseListener listener, String... fields) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().UpcomingBiding(activity, ApiMetrics.wrap("UpcomingBiding", listener));
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        putFields(params, fields);
+        get("UpcomingBiding", "Auction/upcoming", params, listener);
+    }
+
+    /**
+     * One page of published auctions ordered by (end_bid_time, id); after is
+     * the "next" cursor of the previous page, or "" for the first page.
+     * Without {@link #backendRoutes} the first page is the whole list.
+     */
+    public void UpcomingBiding(Activity activity, VolleyApi.ResponseListener listener, String after, int limit,
+                               String... fields) {
+        if (!backendRoutes) {
+            UpcomingBiding(activity, listener);
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("after", after);
+        params.put("limit", String.valueOf(limit));
+        putFields(params, fields);
+        get("UpcomingBiding", "Auction/upcoming", params, listener);
+    }
+
+    /**
+     * Published auctions inserted or updated since the watermark, plus the ids
+     * of auctions closed since then. since is the "sync" value of an earlier
+     * UpcomingBiding response, which only {@link #backendRoutes} gives.
+     */
+    public void UpcomingBidingChanges(Activity activity, VolleyApi.ResponseListener listener, String since,
+                                      String... fields) {
+        if (!backendRoutes) {
+            // no deltas: the whole list, with no watermark, so the next sync reloads too
+            UpcomingBiding(activity, listener);
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("since", since);
+        putFields(params, fields);
+        get("UpcomingBidingChanges", "Auction/upcoming", params, listener);
+    }
+
+    /**
+     * One auction by id, for the columns its list row was fetched without.
+     * VolleyApi has no such route, nor needs one: without
+     * {@link #backendRoutes} list rows come whole, and the call fails.
+     */
+    public void auctionDetail(Activity activity, VolleyApi.ResponseListener listener, String auc_id, String... fields) {
+        if (!backendRoutes) {
+            listener._onResponseError(new UnsupportedOperationException("Auction/detail needs backendRoutes"));
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("id", auc_id);
+        putFields(params, fields);
+        get("auctionDetail", "Auction/detail", params, listener);
+    }
+
+    public void category(Activity activity, VolleyApi.ResponseListener listener) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().category(activity, ApiMetrics.wrap("category", listener));
+            return;
+        }
+        get("category", "Category/list", new LinkedHashMap<String, String>(), listener);
+    }
+
+    public void gethistory(Activity activity, VolleyApi.ResponseListener listener, String user_id, String status,
+                           String... fields) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().gethistory(activity, ApiMetrics.wrap("gethistory", listener), user_id, status);
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("user_id", user_id);
+        params.put("status", status);
+        putFields(params, fields);
+        get("gethistory", "Auction/history", params, listener);
+    }
+
+    /**
+     * Photos of one auction as URLs with their pixel size; the images
+     * themselves are fetched from those URLs. Without {@link #backendRoutes}
+     * VolleyApi's route answers with each photo inline as base64.
+     */
+    public void getAuctionImg(Activity activity, VolleyApi.ResponseListener listener, String auc_id, String... fields) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().getAuctionImg(activity, ApiMetrics.wrap("getAuctionImg", listener), auc_id);
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("auction_id", auc_id);
+        putFields(params, fields);
+        get("getAuctionImg", "Auction/images", params, listener);
+    }
+
+    /**
+     * The user rows of mobile under "login"; photo_url, when asked for, is
+     * the stored photo as an image URL. A POST, as the backend has it, and
+     * never cached: the row holds the OTP. Screens go through
+     * {@link LoginCheckCache}, which shares calls for the same fields.
+     * Without {@link #backendRoutes} it is VolleyApi's loginCheck, which
+     * ignores fields and answers with the whole row, photo inline.
+     */
+    public void loginCheck(Activity activity, VolleyApi.ResponseListener listener, String mobile, String... fields) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().loginCheck(activity, ApiMetrics.wrap("loginCheck", listener), mobile);
+            return;
+        }
+        Map<String, String> params = new HashMap<>();
+        params.put("mobile", mobile);
+        putFields(params, fields);
+        RequestScheduler.Lane lane = RequestScheduler.Lane.LIST;
+        Request<String> request = formRequest("loginCheck", LOGIN_CHECK_PATH, params, lane, listener);
+        request.setShouldCache(false);
+        add("loginCheck", request, lane);
+    }
+
+    /**
+     * One photo of the current auction, inline as base64: VolleyApi's
+     * route, which is all there is without {@link #backendRoutes}.
+     */
+    public void insertAuctionImg(Activity activity, VolleyApi.ResponseListener listener, String photo) {
+        VolleyApi.getInstance().insertAuctionImg(activity, ApiMetrics.wrap("insertAuctionImg", listener), photo);
+    }
+
+    /**
+     * Adds the JPEG files to an auction as its photos, all in one request.
+     * The response has a status per photo, in the order given; the server
+     * files each under its content hash, so photos sent twice are added
+     * once. progress may be null.
+     */
+    public void uploadAuctionImages(Activity activity, VolleyApi.ResponseListener listener, String auc_id,
+                                    List<File> jpegs, ImageBatchUploadRequest.Progress progress) {
+        String url = Uri.parse(baseUrl + IMAGE_BATCH_PATH).buildUpon()
+                .appendQueryParameter("auction_id", auc_id)
+                .build().toString();
+        RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        add("uploadAuctionImages", new ImageBatchUploadRequest(url, "image/jpeg", jpegs, lane.priority,
+                ApiMetrics.wrap("uploadAuctionImages", listener), progress), lane);
+    }
+
+    /**
+     * Stores the smaller renditions of a stored photo, keyed by
+     * {@link ImageRenditions} name; sha256 is the photo's. Only user_id
+     * being the photo's uploader may, and only once: a rendition already
+     * stored is kept, and a different one for its size is answered 409.
+     */
+    public void uploadImageRenditions(Activity activity, VolleyApi.ResponseListener listener, String user_id,
+                                      String sha256, Map<String, File> renditions) {
+        String url = Uri.parse(baseUrl + IMAGE_RENDITIONS_PATH).buildUpon()
+                .appendQueryParameter("hash", sha256)
+                .appendQueryParameter("user_id", user_id)
+                .build().toString();
+        RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        add("uploadImageRenditions", new ImageBatchUploadRequest(url, "image/jpeg", new ArrayList<>(renditions.values()),
+                new ArrayList<>(renditions.keySet()), lane.priority,
+                ApiMetrics.wrap("uploadImageRenditions", listener), null), lane);
+    }
+
+    /**
+     * Adds to an auction the photos, given by the SHA-256 of their files,
+     * that the server already has, so only the others need uploading. The
+     * response has an entry per photo in the order given: "linked",
+     * "missing", or with near set "similar" when one of the seller's
+     * earlier photos is within a few bits of its dHash; linked entries list
+     * the renditions the server has of them. phashes parallels sha256s and
+     * is recorded either way.
+     */
+    public void linkAuctionImages(Activity activity, VolleyApi.ResponseListener listener, String auc_id,
+                                  List<String> sha256s, List<String> phashes, boolean near) {
+        Map<String, String> params = new HashMap<>();
+        params.put("auction_id", auc_id);
+        params.put("sha256", TextUtils.join(",", sha256s));
+        params.put("phash", TextUtils.join(",", phashes));
+        if (near) {
+            params.put("near", "1");
+        }
+        RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        Request<String> request = formRequest("linkAuctionImages", IMAGE_LINK_PATH, params, lane, listener);
+        // linking twice adds nothing, so a lost answer can be asked for again
+        request.setRetryPolicy(new DefaultRetryPolicy(10000, 1, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        request.setShouldCache(false);
+        add("linkAuctionImages", request, lane);
+    }
+
+    /**
+     * Adds the JPEG files to an auction one after another, each in chunks
+     * that resume after a dropped connection (see {@link ChunkedUpload}).
+     * For photos bigger than one request should carry on a poor network;
+     * the returned upload can be cancelled.
+     */
+    public ChunkedUpload uploadAuctionImagesInChunks(Activity activity, String auc_id, List<File> jpegs,
+                                                     ChunkedUpload.Listener listener) {
+        ChunkedUpload upload = new ChunkedUpload(activity, auc_id, jpegs, listener);
+        upload.start();
+        return upload;
+    }
+
+    /**
+     * Opens the upload session of one photo, or finds the open one.
+     */
+    void startUpload(String auc_id, String sha256, long length, VolleyApi.ResponseListener listener) {
+        Map<String, String> params = new HashMap<>();
+        params.put("auction_id", auc_id);
+        params.put("sha256", sha256);
+        params.put("length", String.valueOf(length));
+        RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        uploadControl("startUpload", formRequest("startUpload", ChunkedUpload.START_PATH, params, lane, listener), lane);
+    }
+
+    /**
+     * How far the server has an upload, never from a cache.
+     */
+    void uploadStatus(String uploadId, VolleyApi.ResponseListener listener) {
+        String url = Uri.parse(baseUrl + ChunkedUpload.STATUS_PATH).buildUpon()
+                .appendQueryParameter("id", uploadId)
+                .build().toString();
+        final RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        VolleyApi.ResponseListener metered = ApiMetrics.wrap("uploadStatus", listener);
+        StringRequest request = new StringRequest(Request.Method.GET, url, responses(metered), errors(metered)) {
+            @Override
+            public Priority getPriority() {
+                return lane.priority;
+            }
+        };
+        uploadControl("uploadStatus", request, lane);
+    }
+
+    void uploadChunk(String uploadId, long offset, File file, int length, VolleyApi.ResponseListener listener) {
+        String url = Uri.parse(baseUrl + ChunkedUpload.CHUNK_PATH).buildUpon()
+                .appendQueryParameter("id", uploadId)
+                .appendQueryParameter("offset", String.valueOf(offset))
+                .build().toString();
+        RequestScheduler.Lane lane = RequestScheduler.Lane.IMAGE;
+        add("uploadChunk", new UploadChunkRequest(url, file, offset, length, lane.priority,
+                ApiMetrics.wrap("uploadChunk", listener)), lane);
+    }
+
+    private static Request<String> formRequest(String endpoint, String path, final Map<String, String> params,
+                                               final RequestScheduler.Lane lane, VolleyApi.ResponseListener listener) {
+        VolleyApi.ResponseListener metered = ApiMetrics.wrap(endpoint, listener);
+        return new StringRequest(Request.Method.POST, baseUrl + path, responses(metered), errors(metered)) {
+            @Override
+            protected Map<String, String> getParams() throws AuthFailureError {
+                return params;
+            }
+
+            @Override
+            public Priority getPriority() {
+                return lane.priority;
+            }
+        };
+    }
+
+    private void uploadControl(String endpoint, Request<?> request, RequestScheduler.Lane lane) {
+        // retries are ChunkedUpload's, with backoff
+        request.setRetryPolicy(new DefaultRetryPolicy(10000, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        request.setShouldCache(false);
+        add(endpoint, request, lane);
+    }
+
+    private static Response.Listener<String> responses(final VolleyApi.ResponseListener listener) {
+        return new Response.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                listener._onNext(response);
+            }
+        };
+    }
+
+    private static Response.ErrorListener errors(final VolleyApi.ResponseListener listener) {
+        return new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                listener._onResponseError(error);
+            }
+        };
+    }
+
+    /**
+     * Absolute form of an image URL from a response; the backend may answer
+     * with paths relative to {@link #baseUrl}.
+     */
+    public static String imageUrl(String url) {
+        return url.startsWith("http://") || url.startsWith("https://") ? url : baseUrl + url;
+    }
+
+    public void insertBiding(Activity activity, VolleyApi.ResponseListener listener, String user_id, String auc_id, String bids) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("user_id", user_id);
+        params.put("auction_id", auc_id);
+        params.put("bids", bids);
+        if (!backendRoutes) {
+            VolleyApi.getInstance().insertBiding(activity, ApiMetrics.wrap("insertBiding", listener), user_id, auc_id, bids);
+            return;
+        }
+        Outbox.getInstance(activity).enqueue(activity, BID_PATH, params, ApiMetrics.wrap("insertBiding", listener));
+    }
+
+    /**
+     * Creates an auction from the form state kept in {@link Singleton}.
+     */
+    public void actioncreation(Activity activity, VolleyApi.ResponseListener listener) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().actioncreation(activity, ApiMetrics.wrap("actioncreation", listener));
+            return;
+        }
+        Outbox.getInstance(activity).enqueue(activity, "Auction/create", auctionParams(), ApiMetrics.wrap("actioncreation", listener));
+    }
+
+    public void updateBiding(Activity activity, VolleyApi.ResponseListener listener, String auc_id) {
+        if (!backendRoutes) {
+            VolleyApi.getInstance().updateBiding(activity, ApiMetrics.wrap("updateBiding", listener), auc_id);
+            return;
+        }
+        Map<String, String> params = auctionParams();
+        params.put("id", auc_id);
+        Outbox.getInstance(activity).enqueue(activity, "Auction/update", params, ApiMetrics.wrap("updateBiding", listener));
+    }
+
+    /**
+     * Fields the user has not touched (e.g. dates while editing) are left
+     * out, so an update keeps their stored values.
+     */
+    private static Map<String, String> auctionParams() {
+        Map<String, String> params = new LinkedHashMap<>();
+        putIfSet(params, "title", Singleton.title);
+        putIfSet(params, "description", Singleton.description);
+        putIfSet(params, "min_bids", Singleton.min_bids);
+        putIfSet(params, "status", Singleton.status);
+        putIfSet(params, "start_bid_time", Singleton.startDate);
+        putIfSet(params, "end_bid_time", Singleton.endDate);
+        putIfSet(params, "cat_id", Singleton.cat_id);
+        putIfSet(params, "user_id", Singleton.id);
+        return params;
+    }
+
+    /**
+     * Metrics name of a queued write: the method that queued it.
+     */
+    static String writeEndpoint(String path) {
+        if (BID_PATH.equals(path)) {
+            return "insertBiding";
+        }
+        return "Auction/create".equals(path) ? "actioncreation" : "updateBiding";
+    }
+
+    /**
+     * Lane of a queued write: bids go ahead of everything, auction create
+     * and update count as status changes.
+     */
+    static RequestScheduler.Lane writeLane(String path) {
+        return BID_PATH.equals(path) ? RequestScheduler.Lane.BID : RequestScheduler.Lane.STATUS;
+    }
+
+    private static void putFields(Map<String, String> params, String[] fields) {
+        if (fields.length > 0) {
+            params.put("fields", TextUtils.join(",", fields));
+        }
+    }
+
+    private static void putIfSet(Map<String, String> params, String name, String value) {
+        if (value != null) {
+            params.put(name, value);
+        }
+    }
+
+    /**
+     * Parameters go into the query string so each distinct call gets its
+     * own cache key.
+     */
+    void get(String endpoint, String path, Map<String, String> params, VolleyApi.ResponseListener listener) {
+        Uri.Builder builder = Uri.parse(baseUrl + path).buildUpon();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            builder.appendQueryParameter(param.getKey(), param.getValue());
+        }
+        RequestScheduler.Lane lane = RequestScheduler.Lane.LIST;
+        add(endpoint, new RevalidatingRequest(builder.build().toString(), lane.priority,
+                ApiMetrics.wrap(endpoint, listener)), lane);
+    }
+
+    /**
+     * Queues request on lane; its network timings are counted under
+     * endpoint, the name its callback timings use.
+     */
+    void add(String endpoint, Request<?> request, RequestScheduler.Lane lane) {
+        request.setTag(endpoint);
+        scheduler.submit(request, lane);
+    }
+}
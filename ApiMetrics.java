@@ -0,0 +1,286 @@
+package io.com.didingapp.Volley;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.android.volley.Request;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Per-endpoint latency, payload and error counters.
+ *
+ * Endpoints are named after the ApiClient or VolleyApi method that makes
+ * the call ("UpcomingBiding", "loginCheck", "insertBiding"), whichever
+ * route it ends up on.
+ *
+ * Network timings (queue wait, time to first byte, full exchange and wire
+ * bytes) come from {@link MeteredStack} under ApiClient's queue, DNS and
+ * connect times from {@link OkHttpStack}.
+ * Callback timings (end-to-end latency, parse time, response size, errors)
+ * come from listeners wrapped with {@link #wrap(String, VolleyApi.ResponseListener)},
+ * which also covers the VolleyApi calls whose queue we do not own.
+ *
+ * {@link #dump(Context)} writes everything to api_metrics.json; in debug builds
+ * a long press on the dashboard profile photo shows {@link #summary()}.
+ */
+public class ApiMetrics {
+
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String DNS = "dns";
+    public static final String CONNECT = "connect";
+    public static final String TTFB = "ttfb";
+    public static final String NETWORK = "network";
+    public static final String TOTAL = "total";
+    public static final String PARSE = "parse";
+
+    private static final String DUMP_FILE = "api_metrics.json";
+    private static ApiMetrics instance;
+
+    private final Map<String, EndpointStats> endpoints = new TreeMap<>();
+    private final Map<Request<?>, Long> queuedAt = Collections.synchronizedMap(new WeakHashMap<Request<?>, Long>());
+
+    public static synchronized ApiMetrics getInstance() {
+        if (instance == null) {
+            instance = new ApiMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * The endpoint name ApiClient tagged request with, or for an untagged
+     * request its URL path.
+     */
+    public static String endpointOf(Request<?> request) {
+        Object tag = request.getTag();
+        return tag instanceof String ? (String) tag : endpointOf(request.getUrl());
+    }
+
+    /**
+     * "Auction/upcoming" for any URL under the API base, query string dropped.
+     */
+    public static String endpointOf(String url) {
+        String path = url.startsWith(ApiClient.baseUrl) ? url.substring(ApiClient.baseUrl.length()) : url;
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    /**
+     * Wraps a listener so its end-to-end latency, parse time, response size
+     * and failures are counted under endpoint.
+     */
+    public static VolleyApi.ResponseListener wrap(final String endpoint, final VolleyApi.ResponseListener listener) {
+        final long start = SystemClock.elapsedRealtime();
+        return new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String obj) {
+                ApiMetrics metrics = getInstance();
+                metrics.record(endpoint, TOTAL, SystemClock.elapsedRealtime() - start);
+                metrics.recordResponseBytes(endpoint, obj != null ? obj.length() : 0);
+
+                if (listener instanceof TypedListener) {
+                    // parses in the background and records PARSE itself when done
+                    ((TypedListener<?>) listener).metricsEndpoint = endpoint;
+                    listener._onNext(obj);
+                    return;
+                }
+                // a plain listener parses inline, so its whole callback counts
+                long callback = SystemClock.elapsedRealtime();
+                listener._onNext(obj);
+                metrics.record(endpoint, PARSE, SystemClock.elapsedRealtime() - callback);
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                getInstance().recordError(endpoint);
+                listener._onResponseError(e);
+            }
+        };
+    }
+
+    void markQueued(Request<?> request) {
+        queuedAt.put(request, SystemClock.elapsedRealtime());
+    }
+
+    Long takeQueuedAt(Request<?> request) {
+        return queuedAt.remove(request);
+    }
+
+    public synchronized void record(String endpoint, String metric, long millis) {
+        stats(endpoint).histogram(metric).add(millis);
+    }
+
+    public synchronized void recordResponseBytes(String endpoint, long bytes) {
+        stats(endpoint).responseBytes += bytes;
+    }
+
+    public synchronized void recordWireBytes(String endpoint, long bytes) {
+        stats(endpoint).wireBytes += bytes;
+    }
+
+    public synchronized void recordError(String endpoint) {
+        stats(endpoint).errors++;
+    }
+
+    public synchronized void reset() {
+        endpoints.clear();
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    /**
+     * Writes the current counters to api_metrics.json in the app's files dir.
+     */
+    public File dump(Context context) throws IOException, JSONException {
+        File file = new File(context.getFilesDir(), DUMP_FILE);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(toJson().toString(2).getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * One block per endpoint, slowest p90 end-to-end latency first.
+     */
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder();
+        ArrayList<Map.Entry<String, EndpointStats>> sorted = new ArrayList<>(endpoints.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, EndpointStats>>() {
+            @Override
+            public int compare(Map.Entry<String, EndpointStats> a, Map.Entry<String, EndpointStats> b) {
+                return Long.compare(b.getValue().p90(TOTAL), a.getValue().p90(TOTAL));
+            }
+        });
+        for (Map.Entry<String, EndpointStats> entry : sorted) {
+            EndpointStats stats = entry.getValue();
+            builder.append(entry.getKey()).append('\n');
+            for (Map.Entry<String, Histogram> metric : stats.histograms.entrySet()) {
+                Histogram h = metric.getValue();
+                builder.append("  ").append(metric.getKey())
+                        .append("  n=").append(h.count)
+                        .append("  p50=").append(h.percentile(50))
+                        .append("  p90=").append(h.percentile(90))
+                        .append("  max=").append(h.max).append("ms\n");
+            }
+            builder.append("  bytes  response=").append(stats.responseBytes)
+                    .append("  wire=").append(stats.wireBytes)
+                    .append("  errors=").append(stats.errors).append("\n\n");
+        }
+        return builder.toString();
+    }
+
+    private EndpointStats stats(String endpoint) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = new EndpointStats();
+            endpoints.put(endpoint, stats);
+        }
+        return stats;
+    }
+
+    private static class EndpointStats {
+        final Map<String, Histogram> histograms = new TreeMap<>();
+        long responseBytes;
+        long wireBytes;
+        int errors;
+
+        long p90(String metric) {
+            Histogram h = histograms.get(metric);
+            return h == null ? 0 : h.percentile(90);
+        }
+
+        Histogram histogram(String metric) {
+            Histogram h = histograms.get(metric);
+            if (h == null) {
+                h = new Histogram();
+                histograms.put(metric, h);
+            }
+            return h;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Histogram> metric : histograms.entrySet()) {
+                json.put(metric.getKey(), metric.getValue().toJson());
+            }
+            json.put("response_bytes", responseBytes);
+            json.put("wire_bytes", wireBytes);
+            json.put("errors", errors);
+            return json;
+        }
+    }
+
+    /**
+     * Fixed log-spaced millisecond buckets; percentiles are bucket upper bounds.
+     */
+    private static class Histogram {
+        static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, Long.MAX_VALUE};
+
+        final long[] buckets = new long[BOUNDS.length];
+        long count;
+        long sum;
+        long max;
+
+        void add(long millis) {
+            int i = 0;
+            while (millis > BOUNDS[i]) {
+                i++;
+            }
+            buckets[i]++;
+            count++;
+            sum += millis;
+            max = Math.max(max, millis);
+        }
+
+        long percentile(int p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (count * p + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(BOUNDS[i], max);
+                }
+            }
+            return max;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("mean", count == 0 ? 0 : sum / count);
+            json.put("p50", percentile(50));
+            json.put("p90", percentile(90));
+            json.put("p99", percentile(99));
+            json.put("max", max);
+            JSONObject bucketJson = new JSONObject();
+            for (int i = 0; i < BOUNDS.length; i++) {
+                bucketJson.put(BOUNDS[i] == Long.MAX_VALUE ? "inf" : "le_" + BOUNDS[i], buckets[i]);
+            }
+            json.put("buckets", bucketJson);
+            return json;
+        }
+    }
+}
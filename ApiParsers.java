@@ -0,0 +1,183 @@
+package io.com.didingapp.Volley;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+import io.com.didingapp.history.AuctionPager;
+import io.com.didingapp.history.historyModel;
+import io.com.didingapp.main.model.bidingModel;
+
+/**
+ * Response parsers for the VolleyApi endpoints, one per response shape.
+ */
+public final class ApiParsers {
+
+    private ApiParsers() {
+    }
+
+    /**
+     * loginCheck / login: the first row of "login", or null when the array is empty.
+     */
+    public static final TypedListener.Parser<JSONObject> LOGIN = new TypedListener.Parser<JSONObject>() {
+        @Override
+        public JSONObject parse(String obj) throws JSONException {
+            JSONArray jArray = new JSONObject(obj).getJSONArray("login");
+            return jArray.length() > 0 ? jArray.getJSONObject(0) : null;
+        }
+    };
+
+    /**
+     * The columns an auction list row is built from, for the field list of
+     * UpcomingBiding / gethistory. Rows fetched with it have a null
+     * description; {@link #AUCTION_DESCRIPTION} fetches it for one auction.
+     */
+    public static final String[] AUCTION_ROW_FIELDS = {"id", "title", "min_bids", "status", "cat_id",
+            "start_bid_time", "end_bid_time"};
+
+    /**
+     * auctionDetail with the "description" field: that column of the row.
+     */
+    public static final TypedListener.Parser<String> AUCTION_DESCRIPTION = new TypedListener.Parser<String>() {
+        @Override
+        public String parse(String obj) throws JSONException {
+            return new JSONObject(obj).getJSONArray("data").getJSONObject(0).getString("description");
+        }
+    };
+
+    /**
+     * UpcomingBiding / gethistory: the auction rows of "data".
+     */
+    public static final TypedListener.Parser<ArrayList<historyModel>> AUCTIONS = new TypedListener.Parser<ArrayList<historyModel>>() {
+        @Override
+        public ArrayList<historyModel> parse(String obj) throws JSONException {
+            AuctionFeedReader feed = AuctionFeedReader.read(obj);
+            if (feed.data == null) {
+                throw new JSONException("No value for data");
+            }
+            return feed.data;
+        }
+    };
+
+    /**
+     * Paged UpcomingBiding: one page of rows plus the cursor of
+     * the next one. A response without "data" is an empty last page.
+     */
+    public static final TypedListener.Parser<AuctionPager.Page> AUCTION_PAGE = new TypedListener.Parser<AuctionPager.Page>() {
+        @Override
+        public AuctionPager.Page parse(String obj) throws JSONException {
+            AuctionFeedReader feed = AuctionFeedReader.read(obj);
+            if (feed.data == null) {
+                return new AuctionPager.Page(new ArrayList<historyModel>(), null, feed.sync);
+            }
+            return new AuctionPager.Page(feed.data, feed.next, feed.sync);
+        }
+    };
+
+    /**
+     * UpcomingBiding with a since watermark: open rows changed since then,
+     * ids of rows closed since then, and the watermark for the next call.
+     */
+    public static final TypedListener.Parser<AuctionPager.Delta> AUCTION_DELTA = new TypedListener.Parser<AuctionPager.Delta>() {
+        @Override
+        public AuctionPager.Delta parse(String obj) throws JSONException {
+            AuctionFeedReader feed = AuctionFeedReader.read(obj);
+            if (feed.sync == null) {
+                throw new JSONException("No value for sync");
+            }
+            return new AuctionPager.Delta(
+                    feed.data != null ? feed.data : new ArrayList<historyModel>(),
+                    feed.closed,
+                    feed.sync);
+        }
+    };
+
+    /**
+     * getAuctionImg: the photos of one auction, in order, each an absolute
+     * URL or, as VolleyApi's route still sends them, inline base64.
+     */
+    public static final TypedListener.Parser<ArrayList<String>> AUCTION_PHOTOS = new TypedListener.Parser<ArrayList<String>>() {
+        @Override
+        public ArrayList<String> parse(String obj) throws JSONException {
+            JSONArray jArray = new JSONObject(obj).getJSONArray("data");
+            ArrayList<String> photos = new ArrayList<>(jArray.length());
+            for (int i = 0; i < jArray.length(); i++) {
+                JSONObject json_data = jArray.getJSONObject(i);
+                if (json_data.has("url")) {
+                    photos.add(ApiClient.imageUrl(json_data.getString("url")));
+                } else {
+                    photos.add(json_data.getString("auction_photo"));
+                }
+            }
+            return photos;
+        }
+    };
+
+    /**
+     * getBiding: the bids placed on one auction.
+     */
+    public static final TypedListener.Parser<ArrayList<bidingModel>> BIDS = new TypedListener.Parser<ArrayList<bidingModel>>() {
+        @Override
+        public ArrayList<bidingModel> parse(String obj) throws JSONException {
+            JSONArray jArray = new JSONObject(obj).getJSONArray("data");
+            ArrayList<bidingModel> models = new ArrayList<>(jArray.length());
+            for (int i = 0; i < jArray.length(); i++) {
+                JSONObject json_data = jArray.getJSONObject(i);
+                models.add(new bidingModel(
+                        json_data.getString("auction_id"),
+                        json_data.getString("first_name"),
+                        json_data.getString("bids")
+                ));
+            }
+            return models;
+        }
+    };
+
+    /**
+     * One event of the live bid stream: a single bids_master row.
+     */
+    public static final TypedListener.Parser<bidingModel> BID_EVENT = new TypedListener.Parser<bidingModel>() {
+        @Override
+        public bidingModel parse(String obj) throws JSONException {
+            JSONObject json_data = new JSONObject(obj);
+            return new bidingModel(
+                    json_data.getString("auction_id"),
+                    json_data.getString("first_name"),
+                    json_data.getString("bids")
+            );
+        }
+    };
+
+    /**
+     * Write endpoints (balance, updateStatus, actioncreation, ...): "msg"[0].status.
+     */
+    public static final TypedListener.Parser<String> STATUS = new TypedListener.Parser<String>() {
+        @Override
+        public String parse(String obj) throws JSONException {
+            return new JSONObject(obj).getJSONArray("msg").getJSONObject(0).getString("status");
+        }
+    };
+
+    /**
+     * actioncreation / updateBiding: "msg"[0] itself, its status and, where
+     * the backend sends it, the id of the auction written.
+     */
+    public static final TypedListener.Parser<JSONObject> SAVED = new TypedListener.Parser<JSONObject>() {
+        @Override
+        public JSONObject parse(String obj) throws JSONException {
+            return new JSONObject(obj).getJSONArray("msg").getJSONObject(0);
+        }
+    };
+
+    /**
+     * insertBiding: "msg"[0].msg, the text shown to the bidder.
+     */
+    public static final TypedListener.Parser<String> MESSAGE = new TypedListener.Parser<String>() {
+        @Override
+        public String parse(String obj) throws JSONException {
+            return new JSONObject(obj).getJSONArray("msg").getJSONObject(0).getString("msg");
+        }
+    };
+}
@@ -0,0 +1,198 @@
+package io.com.didingapp.history;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The list updates that turn one snapshot of auction rows into the next.
+ *
+ * Rows are matched by auction id. A row whose only differences are its
+ * price or status is reported as a change with a {@link #PRICE} /
+ * {@link #STATUS} payload, so the bind touches just those views.
+ *
+ * Search results are always rows of the same snapshot, in snapshot order.
+ * Going from one such list to another is a single merge over that order,
+ * with no need for DiffUtil's O(N + D^2) search; going between a 10k-row
+ * list and a handful of matches would otherwise mean thousands of edits.
+ */
+final class AuctionDiff {
+
+    static final int PRICE = 1;
+    static final int STATUS = 2;
+
+    interface Result {
+        void dispatchUpdatesTo(RecyclerView.Adapter adapter);
+    }
+
+    private AuctionDiff() {
+    }
+
+    /**
+     * Meant for a background thread; the lists must not change meanwhile.
+     * base is the snapshot that search results are taken from.
+     */
+    static Result calculate(List<historyModel> base, List<historyModel> old, List<historyModel> next) {
+        Result merged = merge(base, old, next);
+        if (merged != null) {
+            return merged;
+        }
+        final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowCallback(old, next));
+        return new Result() {
+            @Override
+            public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+                diff.dispatchUpdatesTo(adapter);
+            }
+        };
+    }
+
+    /**
+     * Inserts and removes between two ordered subsets of base, or null when
+     * either list holds a row base does not.
+     */
+    private static Result merge(List<historyModel> base, List<historyModel> old, List<historyModel> next) {
+        IdentityHashMap<historyModel, Integer> rank = new IdentityHashMap<>(base.size() * 2);
+        for (int i = 0; i < base.size(); i++) {
+            rank.put(base.get(i), i);
+        }
+        int[] from = ranks(rank, old);
+        int[] to = ranks(rank, next);
+        if (from == null || to == null) {
+            return null;
+        }
+
+        // (inserted?, position, count) triples, in the order they apply
+        final Ops ops = new Ops();
+        int i = 0, j = 0, position = 0;
+        while (i < from.length || j < to.length) {
+            int a = i < from.length ? from[i] : Integer.MAX_VALUE;
+            int b = j < to.length ? to[j] : Integer.MAX_VALUE;
+            if (a == b) {
+                i++;
+                j++;
+                position++;
+            } else if (a < b) {
+                ops.add(0, position);
+                i++;
+            } else {
+                ops.add(1, position);
+                j++;
+                position++;
+            }
+        }
+        return ops;
+    }
+
+    private static int[] ranks(IdentityHashMap<historyModel, Integer> rank, List<historyModel> rows) {
+        int[] ranks = new int[rows.size()];
+        int previous = -1;
+        for (int i = 0; i < ranks.length; i++) {
+            Integer r = rank.get(rows.get(i));
+            if (r == null || r <= previous) {
+                return null;
+            }
+            ranks[i] = previous = r;
+        }
+        return ranks;
+    }
+
+    private static class Ops implements Result {
+        private int[] ops = new int[30];
+        private int size;
+
+        /**
+         * One row inserted or removed at position; runs are folded into a
+         * single range.
+         */
+        void add(int inserted, int position) {
+            if (size > 0 && ops[size - 3] == inserted) {
+                int start = ops[size - 2];
+                int count = ops[size - 1];
+                // removals stay at the same position, inserts move one further each
+                if ((inserted == 0 && position == start) || (inserted == 1 && position == start + count)) {
+                    ops[size - 1]++;
+                    return;
+                }
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+            }
+            ops[size++] = inserted;
+            ops[size++] = position;
+            ops[size++] = 1;
+        }
+
+        @Override
+        public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+            for (int k = 0; k < size; k += 3) {
+                if (ops[k] == 1) {
+                    adapter.notifyItemRangeInserted(ops[k + 1], ops[k + 2]);
+                } else {
+                    adapter.notifyItemRangeRemoved(ops[k + 1], ops[k + 2]);
+                }
+            }
+        }
+    }
+
+    private static class RowCallback extends DiffUtil.Callback {
+        private final List<historyModel> old;
+        private final List<historyModel> next;
+
+        RowCallback(List<historyModel> old, List<historyModel> next) {
+            this.old = old;
+            this.next = next;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return old.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return next.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return old.get(oldPosition).getId() == next.get(newPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            historyModel a = old.get(oldPosition);
+            historyModel b = next.get(newPosition);
+            return a == b || (sameText(a, b) && changes(a, b) == 0);
+        }
+
+        @Override
+        public Object getChangePayload(int oldPosition, int newPosition) {
+            historyModel a = old.get(oldPosition);
+            historyModel b = next.get(newPosition);
+            // anything besides price and status changed: rebind the whole row
+            return sameText(a, b) ? changes(a, b) : null;
+        }
+
+        private static boolean sameText(historyModel a, historyModel b) {
+            return a.getTitle().equals(b.getTitle())
+                    && a.getStartMillis() == b.getStartMillis()
+                    && a.getEndMillis() == b.getEndMillis();
+        }
+
+        private static int changes(historyModel a, historyModel b) {
+            int changed = 0;
+            if (a.getMinBidMinor() != b.getMinBidMinor() || a.getMyBidMinor() != b.getMyBidMinor()
+                    || !TextUtils.equals(a.getMinBidText(), b.getMinBidText())) {
+                changed |= PRICE;
+            }
+            if (a.getStatusCode() != b.getStatusCode()) {
+                changed |= STATUS;
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.com.didingapp.Volley;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import io.com.didingapp.history.AuctionFields;
+import io.com.didingapp.history.historyModel;
+
+/**
+ * Pull parser for the auction feeds (UpcomingBiding, gethistory and the
+ * paged and delta forms of UpcomingBiding).
+ *
+ * Rows of "data" are decoded field by field straight into historyModel,
+ * without building a JSONObject tree first; fields the model does not use
+ * are skipped unread. A JSON null is read as "null", as org.json's
+ * getString gives it, before {@link AuctionFields} decodes the value.
+ * description may be missing, in feeds fetched with
+ * {@link ApiParsers#AUCTION_ROW_FIELDS}; the model then has null there.
+ */
+final class AuctionFeedReader {
+
+    ArrayList<historyModel> data;
+    String next;
+    String sync;
+    final HashSet<Long> closed = new HashSet<>();
+
+    private AuctionFeedReader() {
+    }
+
+    static AuctionFeedReader read(String obj) throws JSONException {
+        AuctionFeedReader feed = new AuctionFeedReader();
+        JsonReader reader = new JsonReader(new StringReader(obj));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("data")) {
+                    feed.data = auctions(reader);
+                } else if (name.equals("next")) {
+                    feed.next = stringOrNull(reader);
+                } else if (name.equals("sync")) {
+                    feed.sync = stringOrNull(reader);
+                } else if (name.equals("closed")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        feed.closed.add(AuctionFields.parseId(reader.nextString()));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // malformed input or an unexpected token; report it like org.json would
+            throw new JSONException(e.toString());
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return feed;
+    }
+
+    private static ArrayList<historyModel> auctions(JsonReader reader) throws IOException, JSONException {
+        ArrayList<historyModel> models = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String title = null, min_bids = null, start_bid_time = null, end_bid_time = null;
+            String status = null, cat_id = null, description = null, id = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "title":
+                        title = value(reader);
+                        break;
+                    case "min_bids":
+                        min_bids = value(reader);
+                        break;
+                    case "start_bid_time":
+                        start_bid_time = value(reader);
+                        break;
+                    case "end_bid_time":
+                        end_bid_time = value(reader);
+                        break;
+                    case "status":
+                        status = value(reader);
+                        break;
+                    case "cat_id":
+                        cat_id = value(reader);
+                        break;
+                    case "description":
+                        description = value(reader);
+                        break;
+                    case "id":
+                        id = value(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (title == null || min_bids == null || start_bid_time == null || end_bid_time == null
+                    || status == null || cat_id == null || id == null) {
+                throw new JSONException("Auction row is missing a field");
+            }
+            models.add(new historyModel(AuctionFields.parseId(id), title, description, AuctionFields.parseAmount(min_bids),
+                    AuctionFields.amountText(min_bids), 0, AuctionFields.parseCode(status), AuctionFields.parseCode(cat_id),
+                    AuctionFields.parseTime(start_bid_time), AuctionFields.parseTime(end_bid_time)));
+        }
+        reader.endArray();
+        return models;
+    }
+
+    /**
+     * A column as org.json's getString returns it: JSON null becomes "null".
+     */
+    private static String value(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "null";
+        }
+        return reader.nextString();
+    }
+
+    private static String stringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
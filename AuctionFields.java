@@ -0,0 +1,217 @@
+package io.com.didingapp.history;
+
+/**
+ * Conversions between the backend's string columns and the primitive
+ * fields of {@link historyModel}.
+ *
+ * Timestamps are "yyyy-MM-dd HH:mm:ss" in the server's wall clock and are
+ * kept as milliseconds since the epoch of that clock (read as UTC), so they
+ * format back to exactly the string the server sent; 0 stands for a
+ * missing or zero date, which formats as "", and dates before 1970 are not
+ * expected. Amounts are kept in minor units (1/100); a value that is not an
+ * amount at all is kept verbatim by the model (see {@link #amountText}).
+ *
+ * The write* methods fill a caller-owned char buffer so a bind can show a
+ * value without allocating.
+ */
+public final class AuctionFields {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private AuctionFields() {
+    }
+
+    public static long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static int parseCode(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * "1000" or "1000.5" to minor units; anything else is 0.
+     */
+    public static long parseAmount(String value) {
+        return Math.max(amount(value), 0);
+    }
+
+    /**
+     * value itself when it is neither empty nor an amount (the backend does
+     * not validate min_bids, so a row may hold any text), otherwise null.
+     */
+    public static String amountText(String value) {
+        return amount(value) < 0 ? value : null;
+    }
+
+    // minor units, 0 for a missing value (null, JSON null or ""), -1 for anything else that is not an amount
+    private static long amount(String value) {
+        if (value == null || value.isEmpty() || value.equals("null")) {
+            return 0;
+        }
+        long units = 0;
+        int fraction = -1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (fraction >= 2) {
+                    continue;
+                }
+                units = units * 10 + (c - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else {
+                return -1;
+            }
+        }
+        for (int digits = Math.max(fraction, 0); digits < 2; digits++) {
+            units *= 10;
+        }
+        return units;
+    }
+
+    public static String formatAmount(long minor) {
+        char[] buffer = new char[24];
+        return new String(buffer, 0, writeAmount(minor, buffer, 0));
+    }
+
+    /**
+     * Whole amounts without decimals, as the backend stores them; otherwise
+     * two decimals.
+     */
+    public static int writeAmount(long minor, char[] buffer, int offset) {
+        offset = writeNumber(minor / 100, buffer, offset);
+        long cents = minor % 100;
+        if (cents != 0) {
+            buffer[offset++] = '.';
+            buffer[offset++] = (char) ('0' + cents / 10);
+            buffer[offset++] = (char) ('0' + cents % 10);
+        }
+        return offset;
+    }
+
+    public static int writeNumber(long value, char[] buffer, int offset) {
+        if (value == 0) {
+            buffer[offset] = '0';
+            return offset + 1;
+        }
+        int start = offset;
+        while (value > 0) {
+            buffer[offset++] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        for (int i = start, j = offset - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        return offset;
+    }
+
+    /**
+     * "yyyy-MM-dd HH:mm:ss" to millis; 0 for null, "null", a zero date or
+     * anything malformed.
+     */
+    public static long parseTime(String value) {
+        if (value == null || value.length() < 19) {
+            return 0;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        if (year <= 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return 0;
+        }
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000;
+    }
+
+    public static String formatTime(long millis) {
+        if (millis == 0) {
+            return "";
+        }
+        char[] buffer = new char[19];
+        writeDate(millis, buffer, 0);
+        buffer[10] = ' ';
+        long secondOfDay = millis % MILLIS_PER_DAY / 1000;
+        two(buffer, 11, (int) (secondOfDay / 3600));
+        buffer[13] = ':';
+        two(buffer, 14, (int) (secondOfDay / 60 % 60));
+        buffer[16] = ':';
+        two(buffer, 17, (int) (secondOfDay % 60));
+        return new String(buffer);
+    }
+
+    /**
+     * Writes "yyyy-MM-dd", or nothing for 0.
+     */
+    public static int writeDate(long millis, char[] buffer, int offset) {
+        if (millis == 0) {
+            return offset;
+        }
+        // civil-from-days, http://howardhinnant.github.io/date_algorithms.html
+        long z = millis / MILLIS_PER_DAY + 719468;
+        long era = z / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        two(buffer, offset, (int) (year / 100));
+        two(buffer, offset + 2, (int) (year % 100));
+        buffer[offset + 4] = '-';
+        two(buffer, offset + 5, month);
+        buffer[offset + 7] = '-';
+        two(buffer, offset + 8, day);
+        return offset + 10;
+    }
+
+    public static int write(String text, char[] buffer, int offset) {
+        text.getChars(0, text.length(), buffer, offset);
+        return offset + text.length();
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int digits(String value, int start, int count) {
+        int n = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    private static void two(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+}
@@ -0,0 +1,360 @@
+package io.com.didingapp.history;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import io.com.didingapp.Volley.ApiParsers;
+import io.com.didingapp.Volley.TypedListener;
+import io.com.didingapp.Volley.VolleyApi;
+
+/**
+ * Cursor-paged data source for {@link historyAdabter}.
+ *
+ * Attach it as the RecyclerView's scroll listener: the next page is
+ * requested once the user scrolls within {@link #PREFETCH_DISTANCE} rows of
+ * the end. At most {@link #MAX_PAGES} pages are kept in {@link #getItems()};
+ * when the window is full the page furthest from the viewport is dropped and
+ * its cursor remembered, so scrolling back reloads it instead of keeping
+ * every row of a long feed in memory.
+ *
+ * Once the first page is in, {@link #sync()} asks only for auctions changed
+ * since the last watermark and merges them into the loaded window. A sync
+ * asked for while a page is loading waits for that page, so a delta is never
+ * merged into a window that is about to change under it.
+ *
+ * With a {@link AuctionStore} set, every page and delta is written through
+ * to it, and {@link #restore()} shows the stored first page until the
+ * network's arrives.
+ */
+public class AuctionPager extends RecyclerView.OnScrollListener {
+
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 6;
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /**
+     * Requests the page starting after cursor ("" for the first page).
+     */
+    public interface PageSource {
+        void load(String cursor, VolleyApi.ResponseListener listener);
+
+        /**
+         * Requests the rows inserted, updated or closed since the watermark.
+         */
+        void loadChanges(String since, VolleyApi.ResponseListener listener);
+    }
+
+    public interface Callback {
+        void onRefreshed(boolean empty);
+
+        void onFailure(Throwable e);
+    }
+
+    /**
+     * One page of a paged response; next is null on the last page.
+     */
+    public static class Page {
+        public final ArrayList<historyModel> models;
+        public final String next;
+        public final String sync;
+        String cursor;
+
+        public Page(ArrayList<historyModel> models, String next, String sync) {
+            this.models = models;
+            this.next = next;
+            this.sync = sync;
+        }
+    }
+
+    /**
+     * Changes since a watermark: rows still open, and ids of rows that closed.
+     */
+    public static class Delta {
+        public final ArrayList<historyModel> changed;
+        public final HashSet<Long> closed;
+        public final String sync;
+
+        public Delta(ArrayList<historyModel> changed, HashSet<Long> closed, String sync) {
+            this.changed = changed;
+            this.closed = closed;
+            this.sync = sync;
+        }
+    }
+
+    private final ArrayList<historyModel> items = new ArrayList<>();
+    private final LinkedList<Page> window = new LinkedList<>();
+    private final ArrayDeque<String> droppedBefore = new ArrayDeque<>();
+    private final PageSource source;
+    private final Callback callback;
+    private historyAdabter adapter;
+    private AuctionStore store;
+    private boolean loading;
+    private boolean syncPending;
+    private int generation;
+    private String watermark;
+
+    public AuctionPager(PageSource source, Callback callback) {
+        this.source = source;
+        this.callback = callback;
+    }
+
+    public ArrayList<historyModel> getItems() {
+        return items;
+    }
+
+    public void setAdapter(historyAdabter adapter) {
+        this.adapter = adapter;
+    }
+
+    public void setStore(AuctionStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Shows the stored first page while nothing is loaded. It has no next
+     * cursor, so it does not page on its own; the next refresh replaces it.
+     */
+    public void restore() {
+        if (store == null) {
+            return;
+        }
+        store.loadUpcoming(PAGE_SIZE, new AuctionStore.Callback<ArrayList<historyModel>>() {
+            @Override
+            public void onLoaded(ArrayList<historyModel> rows) {
+                if (!window.isEmpty() || rows.isEmpty()) {
+                    return;
+                }
+                Page page = new Page(rows, null, null);
+                page.cursor = "";
+                append(page);
+                publish();
+                callback.onRefreshed(false);
+            }
+        });
+    }
+
+    /**
+     * Reloads from the first page; rows on screen stay until it arrives.
+     */
+    public void refresh() {
+        generation++;
+        loading = false;
+        syncPending = false;
+        load("", true, true);
+    }
+
+    /**
+     * Brings the list up to date: a full refresh the first time, afterwards
+     * only the changes since the last response. While a page or delta is
+     * loading it runs once that finishes instead.
+     */
+    public void sync() {
+        if (watermark == null || window.isEmpty()) {
+            refresh();
+            return;
+        }
+        if (loading) {
+            syncPending = true;
+            return;
+        }
+        loading = true;
+        final int requested = generation;
+        source.loadChanges(watermark, new TypedListener<Delta>(ApiParsers.AUCTION_DELTA) {
+            @Override
+            public void onResult(Delta delta) {
+                if (requested != generation) {
+                    return;
+                }
+                loading = false;
+                apply(delta);
+                publish();
+                if (store != null) {
+                    store.applyUpcomingDelta(delta);
+                }
+                watermark = delta.sync;
+                callback.onRefreshed(items.isEmpty());
+                runPendingSync();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                if (requested != generation) {
+                    return;
+                }
+                loading = false;
+                syncPending = false;
+                callback.onFailure(e);
+            }
+        });
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (loading || window.isEmpty() || adapter == null || adapter.isFiltered()) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= items.size() - PREFETCH_DISTANCE) {
+            String next = window.getLast().next;
+            if (next != null) {
+                load(next, true, false);
+            }
+        } else if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE
+                && !droppedBefore.isEmpty()) {
+            load(droppedBefore.peek(), false, false);
+        }
+    }
+
+    private void load(final String cursor, final boolean forward, final boolean replace) {
+        loading = true;
+        final int requested = generation;
+        source.load(cursor, new TypedListener<Page>(ApiParsers.AUCTION_PAGE) {
+            @Override
+            public void onResult(Page page) {
+                if (requested != generation) {
+                    return;
+                }
+                loading = false;
+                page.cursor = cursor;
+                if (store != null) {
+                    store.putUpcomingPage(cursor, page);
+                }
+                if (replace) {
+                    clear();
+                    watermark = page.sync;
+                }
+                if (forward) {
+                    append(page);
+                } else {
+                    droppedBefore.pop();
+                    prepend(page);
+                }
+                publish();
+                if (replace) {
+                    // the fresh first page already carries every change
+                    syncPending = false;
+                    callback.onRefreshed(items.isEmpty());
+                }
+                runPendingSync();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                if (requested != generation) {
+                    return;
+                }
+                loading = false;
+                callback.onFailure(e);
+                runPendingSync();
+            }
+        });
+    }
+
+    private void runPendingSync() {
+        if (syncPending) {
+            syncPending = false;
+            sync();
+        }
+    }
+
+    private void clear() {
+        items.clear();
+        window.clear();
+        droppedBefore.clear();
+    }
+
+    private void append(Page page) {
+        window.addLast(page);
+        items.addAll(page.models);
+
+        if (window.size() > MAX_PAGES) {
+            Page first = window.removeFirst();
+            droppedBefore.push(first.cursor);
+            items.subList(0, first.models.size()).clear();
+        }
+    }
+
+    private void prepend(Page page) {
+        window.addFirst(page);
+        items.addAll(0, page.models);
+
+        if (window.size() > MAX_PAGES) {
+            Page last = window.removeLast();
+            int start = items.size() - last.models.size();
+            items.subList(start, items.size()).clear();
+        }
+    }
+
+    private void apply(Delta delta) {
+        HashSet<Long> gone = new HashSet<>(delta.closed);
+        for (historyModel model : delta.changed) {
+            gone.add(model.getId());
+        }
+
+        int offset = 0;
+        for (Page page : window) {
+            for (int i = 0; i < page.models.size(); ) {
+                if (gone.contains(page.models.get(i).getId())) {
+                    page.models.remove(i);
+                    items.remove(offset + i);
+                } else {
+                    i++;
+                }
+            }
+            offset += page.models.size();
+        }
+
+        for (historyModel model : delta.changed) {
+            insertSorted(model);
+        }
+    }
+
+    /**
+     * Inserts a changed row at its (end_bid_time, id) position, provided that
+     * position lies inside the loaded window; rows outside it arrive with
+     * their page.
+     */
+    private void insertSorted(historyModel model) {
+        if (!droppedBefore.isEmpty() && (items.isEmpty() || compare(model, items.get(0)) < 0)) {
+            return;
+        }
+        int offset = 0;
+        for (Page page : window) {
+            boolean lastPage = page == window.getLast();
+            int last = page.models.size() - 1;
+            if (lastPage || (last >= 0 && compare(model, page.models.get(last)) <= 0)) {
+                if (lastPage && page.next != null && (last < 0 || compare(model, page.models.get(last)) > 0)) {
+                    return;
+                }
+                int i = 0;
+                while (i < page.models.size() && compare(page.models.get(i), model) < 0) {
+                    i++;
+                }
+                page.models.add(i, model);
+                items.add(offset + i, model);
+                return;
+            }
+            offset += page.models.size();
+        }
+    }
+
+    private static int compare(historyModel a, historyModel b) {
+        int byTime = Long.compare(a.getEndMillis(), b.getEndMillis());
+        if (byTime != 0) {
+            return byTime;
+        }
+        return Long.compare(a.getId(), b.getId());
+    }
+
+    // the adapter diffs the copy against what it shows, so only what changed is rebound
+    private void publish() {
+        if (adapter != null) {
+            adapter.submitList(items);
+        }
+    }
+}
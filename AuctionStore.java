@@ -0,0 +1,407 @@
+package io.com.didingapp.history;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * On-device copy of the auctions, auction photos and the user's own bids,
+ * so lists can be drawn at launch, and offline, before the network answers.
+ *
+ * All reads and writes run in order on one background thread; results are
+ * delivered on the main thread. The store only ever mirrors what the
+ * server sent: a network response replaces the rows it covers, and rows
+ * the response shows to be gone from a list get status 0 and drop out of
+ * every query. Anything that ended more than {@link #KEEP_ENDED_MILLIS}
+ * ago and does not belong to the user is pruned.
+ */
+public class AuctionStore extends SQLiteOpenHelper {
+
+    private static final String NAME = "auctions.db";
+    // 2: auction_images.photo holds image URLs rather than base64
+    // 3: auctions.min_bids_text keeps a min_bids that is not an amount
+    private static final int VERSION = 3;
+    private static final long KEEP_ENDED_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final String COLUMNS = "id, title, description, min_bids, min_bids_text, status, category, start_time, end_time";
+
+    private static final ExecutorService DISK = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "auction-store");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private static AuctionStore instance;
+
+    public interface Callback<T> {
+        void onLoaded(T result);
+    }
+
+    public static synchronized AuctionStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AuctionStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AuctionStore(Context context) {
+        super(context, NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE auctions ("
+                + "id INTEGER PRIMARY KEY, title TEXT NOT NULL, description TEXT NOT NULL, "
+                + "min_bids INTEGER NOT NULL, min_bids_text TEXT, status INTEGER NOT NULL, category INTEGER NOT NULL, "
+                + "start_time INTEGER NOT NULL, end_time INTEGER NOT NULL, user_id TEXT)");
+        // the upcoming feed: status 2 in (end_bid_time, id) order, as the server pages it
+        db.execSQL("CREATE INDEX auctions_status ON auctions (status, end_time, id)");
+        db.execSQL("CREATE INDEX auctions_category ON auctions (category, status, end_time)");
+        db.execSQL("CREATE INDEX auctions_user ON auctions (user_id, status, end_time)");
+        db.execSQL("CREATE INDEX auctions_end ON auctions (end_time)");
+
+        db.execSQL("CREATE TABLE auction_images ("
+                + "auction_id INTEGER NOT NULL, position INTEGER NOT NULL, photo TEXT NOT NULL, "
+                + "PRIMARY KEY (auction_id, position))");
+
+        db.execSQL("CREATE TABLE my_bids ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, user_id TEXT NOT NULL, auction_id INTEGER NOT NULL, "
+                + "amount INTEGER NOT NULL, placed_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX my_bids_user ON my_bids (user_id, auction_id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // only a cache of the server: start over rather than migrate
+        db.execSQL("DROP TABLE IF EXISTS auctions");
+        db.execSQL("DROP TABLE IF EXISTS auction_images");
+        db.execSQL("DROP TABLE IF EXISTS my_bids");
+        onCreate(db);
+    }
+
+    /**
+     * The first limit rows of the upcoming feed as last seen.
+     */
+    public void loadUpcoming(final int limit, Callback<ArrayList<historyModel>> callback) {
+        read(callback, new Query<ArrayList<historyModel>>() {
+            @Override
+            public ArrayList<historyModel> run(SQLiteDatabase db) {
+                return auctions(db.rawQuery("SELECT " + COLUMNS + " FROM auctions WHERE status = 2 "
+                        + "ORDER BY end_time, id LIMIT " + limit, null));
+            }
+        });
+    }
+
+    /**
+     * The user's own auctions with the given status, or with any status
+     * when status is 0.
+     */
+    public void loadHistory(final String userId, final int status, Callback<ArrayList<historyModel>> callback) {
+        read(callback, new Query<ArrayList<historyModel>>() {
+            @Override
+            public ArrayList<historyModel> run(SQLiteDatabase db) {
+                if (status == 0) {
+                    return auctions(db.rawQuery("SELECT " + COLUMNS + " FROM auctions WHERE user_id = ? AND status != 0 "
+                            + "ORDER BY end_time, id", new String[]{userId}));
+                }
+                return auctions(db.rawQuery("SELECT " + COLUMNS + " FROM auctions WHERE user_id = ? AND status = ? "
+                        + "ORDER BY end_time, id", new String[]{userId, String.valueOf(status)}));
+            }
+        });
+    }
+
+    /**
+     * Auctions the user has bid on, each with their highest bid as mybids.
+     */
+    public void loadMyBids(final String userId, Callback<ArrayList<historyModel>> callback) {
+        read(callback, new Query<ArrayList<historyModel>>() {
+            @Override
+            public ArrayList<historyModel> run(SQLiteDatabase db) {
+                Cursor cursor = db.rawQuery("SELECT a.id, a.title, a.description, a.min_bids, a.min_bids_text, MAX(b.amount), "
+                        + "a.status, a.category, a.start_time, a.end_time FROM my_bids b "
+                        + "JOIN auctions a ON a.id = b.auction_id WHERE b.user_id = ? AND a.status != 0 "
+                        + "GROUP BY a.id ORDER BY a.end_time, a.id", new String[]{userId});
+                ArrayList<historyModel> models = new ArrayList<>(cursor.getCount());
+                try {
+                    while (cursor.moveToNext()) {
+                        models.add(new historyModel(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                                cursor.getLong(3), cursor.getString(4), cursor.getLong(5), cursor.getInt(6), cursor.getInt(7),
+                                cursor.getLong(8), cursor.getLong(9)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return models;
+            }
+        });
+    }
+
+    public void loadImages(final long auctionId, Callback<ArrayList<String>> callback) {
+        read(callback, new Query<ArrayList<String>>() {
+            @Override
+            public ArrayList<String> run(SQLiteDatabase db) {
+                Cursor cursor = db.rawQuery("SELECT photo FROM auction_images WHERE auction_id = ? ORDER BY position",
+                        new String[]{String.valueOf(auctionId)});
+                ArrayList<String> photos = new ArrayList<>(cursor.getCount());
+                try {
+                    while (cursor.moveToNext()) {
+                        photos.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return photos;
+            }
+        });
+    }
+
+    /**
+     * One page of the upcoming feed, as requested with cursor ("" for the
+     * first page). Rows the server no longer lists between cursor and the
+     * page's last row (or the end of the feed, on the last page) are
+     * marked gone.
+     */
+    public void putUpcomingPage(final String cursor, AuctionPager.Page page) {
+        // the pager keeps editing its page lists on the main thread
+        final ArrayList<historyModel> models = new ArrayList<>(page.models);
+        final boolean lastPage = page.next == null;
+        write(new Write() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                StringBuilder where = new StringBuilder("status = 2");
+                ArrayList<String> args = new ArrayList<>();
+                if (cursor != null && !cursor.isEmpty()) {
+                    int comma = cursor.lastIndexOf(',');
+                    long endTime = AuctionFields.parseTime(cursor.substring(0, comma));
+                    where.append(" AND (end_time > ? OR (end_time = ? AND id > ?))");
+                    args.add(String.valueOf(endTime));
+                    args.add(String.valueOf(endTime));
+                    args.add(String.valueOf(AuctionFields.parseId(cursor.substring(comma + 1))));
+                }
+                if (!lastPage && !models.isEmpty()) {
+                    historyModel last = models.get(models.size() - 1);
+                    where.append(" AND (end_time < ? OR (end_time = ? AND id <= ?))");
+                    args.add(String.valueOf(last.getEndMillis()));
+                    args.add(String.valueOf(last.getEndMillis()));
+                    args.add(String.valueOf(last.getId()));
+                }
+                markGone(db, where.toString(), args, models);
+                for (historyModel model : models) {
+                    upsert(db, model, null);
+                }
+                if (cursor == null || cursor.isEmpty()) {
+                    db.delete("auctions", "end_time != 0 AND end_time < ? AND user_id IS NULL",
+                            new String[]{String.valueOf(System.currentTimeMillis() - KEEP_ENDED_MILLIS)});
+                }
+            }
+        });
+    }
+
+    public void applyUpcomingDelta(final AuctionPager.Delta delta) {
+        write(new Write() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                for (historyModel model : delta.changed) {
+                    upsert(db, model, null);
+                }
+                ContentValues gone = new ContentValues();
+                gone.put("status", 0);
+                for (Long id : delta.closed) {
+                    db.update("auctions", gone, "id = ? AND status = 2", new String[]{String.valueOf(id)});
+                }
+            }
+        });
+    }
+
+    /**
+     * The complete list of the user's auctions with status (0: any status),
+     * as gethistory returns it.
+     */
+    public void putHistory(final String userId, final int status, List<historyModel> rows) {
+        final ArrayList<historyModel> models = new ArrayList<>(rows);
+        write(new Write() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                ArrayList<String> args = new ArrayList<>();
+                args.add(userId);
+                String where = "user_id = ? AND status != 0";
+                if (status != 0) {
+                    where = "user_id = ? AND status = ?";
+                    args.add(String.valueOf(status));
+                }
+                markGone(db, where, args, models);
+                for (historyModel model : models) {
+                    upsert(db, model, userId);
+                }
+            }
+        });
+    }
+
+    public void putImages(final long auctionId, List<String> list) {
+        final ArrayList<String> photos = new ArrayList<>(list);
+        write(new Write() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                db.delete("auction_images", "auction_id = ?", new String[]{String.valueOf(auctionId)});
+                ContentValues values = new ContentValues();
+                for (int i = 0; i < photos.size(); i++) {
+                    values.put("auction_id", auctionId);
+                    values.put("position", i);
+                    values.put("photo", photos.get(i));
+                    db.insert("auction_images", null, values);
+                }
+            }
+        });
+    }
+
+    /**
+     * A bid of the user's that the server accepted; amount in minor units.
+     */
+    public void putBid(final String userId, final long auctionId, final long amount) {
+        write(new Write() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                ContentValues values = new ContentValues();
+                values.put("user_id", userId);
+                values.put("auction_id", auctionId);
+                values.put("amount", amount);
+                values.put("placed_at", System.currentTimeMillis());
+                db.insert("my_bids", null, values);
+            }
+        });
+    }
+
+    /**
+     * Sets status 0 on the rows matching where that are not among models.
+     */
+    private static void markGone(SQLiteDatabase db, String where, ArrayList<String> args, List<historyModel> models) {
+        HashSet<Long> kept = new HashSet<>();
+        for (historyModel model : models) {
+            kept.add(model.getId());
+        }
+        Cursor cursor = db.rawQuery("SELECT id FROM auctions WHERE " + where, args.toArray(new String[0]));
+        ArrayList<Long> gone = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                if (!kept.contains(cursor.getLong(0))) {
+                    gone.add(cursor.getLong(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues values = new ContentValues();
+        values.put("status", 0);
+        for (Long id : gone) {
+            db.update("auctions", values, "id = ?", new String[]{String.valueOf(id)});
+        }
+    }
+
+    /**
+     * Writes model over the stored row; the owner is kept unless userId
+     * names one, since the upcoming feed does not say whose an auction is,
+     * and so is the description when the feed left it out.
+     */
+    private static void upsert(SQLiteDatabase db, historyModel model, String userId) {
+        ContentValues values = new ContentValues();
+        values.put("title", model.getTitle());
+        if (model.getDescription() != null) {
+            values.put("description", model.getDescription());
+        }
+        values.put("min_bids", model.getMinBidMinor());
+        values.put("min_bids_text", model.getMinBidText());
+        values.put("status", model.getStatusCode());
+        values.put("category", model.getCategoryCode());
+        values.put("start_time", model.getStartMillis());
+        values.put("end_time", model.getEndMillis());
+        if (userId != null) {
+            values.put("user_id", userId);
+        }
+        String[] id = {String.valueOf(model.getId())};
+        if (db.update("auctions", values, "id = ?", id) == 0) {
+            values.put("id", model.getId());
+            if (model.getDescription() == null) {
+                values.put("description", "");
+            }
+            db.insert("auctions", null, values);
+        }
+    }
+
+    private static ArrayList<historyModel> auctions(Cursor cursor) {
+        ArrayList<historyModel> models = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                models.add(new historyModel(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getString(4), 0, cursor.getInt(5), cursor.getInt(6),
+                        cursor.getLong(7), cursor.getLong(8)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return models;
+    }
+
+    private interface Query<T> {
+        T run(SQLiteDatabase db);
+    }
+
+    private interface Write {
+        void run(SQLiteDatabase db);
+    }
+
+    private <T> void read(final Callback<T> callback, final Query<T> query) {
+        DISK.execute(new Runnable() {
+            @Override
+            public void run() {
+                final T result;
+                try {
+                    result = query.run(getReadableDatabase());
+                } catch (RuntimeException e) {
+                    // a broken cache only costs the head start; the network still answers
+                    e.printStackTrace();
+                    return;
+                }
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void write(final Write write) {
+        DISK.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        write.run(db);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+}
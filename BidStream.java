@@ -0,0 +1,228 @@
+package io.com.didingapp.Volley;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Server-sent event subscription to the bids of one auction.
+ *
+ * Biding/stream keeps the connection open and writes one event per new
+ * bids_master row ("id" is the bid id, "data" the row as JSON), after an
+ * initial data-less event whose id marks the newest bid at subscribe time.
+ * Each event's data is handed to the listener on the main thread. A
+ * dropped connection reconnects with Last-Event-ID, so the server resumes
+ * after the last bid read. stop() drops events not yet handed over, so a
+ * stop()/start() across onPause resumes after the last bid the listener
+ * got instead; nothing is missed or repeated either way.
+ *
+ * Opened {@link #FROM_START}, the stream first replays every bid of the
+ * auction, which makes a separate fetch of the bid history unnecessary
+ * and leaves no gap between such a fetch and the subscription.
+ */
+public class BidStream {
+
+    private static final String TAG = "BidStream";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    // the server sends a keepalive comment every 15s; twice that means the link is dead
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final long FIRST_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 30000;
+
+    /**
+     * Resume point before the first bid: the stream replays them all.
+     */
+    public static final String FROM_START = "0";
+
+    private final String auctionId;
+    private final VolleyApi.ResponseListener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean running;
+    private volatile HttpURLConnection connection;
+    private volatile Thread thread;
+    // where the reader resumes after a dropped connection
+    private volatile String lastEventId;
+    // the id of the last event handed to the listener; main thread only
+    private String deliveredEventId;
+    private long retry = FIRST_RETRY_MS;
+
+    /**
+     * Only bids placed after subscribing are delivered.
+     */
+    public BidStream(String auctionId, VolleyApi.ResponseListener listener) {
+        this(auctionId, null, listener);
+    }
+
+    /**
+     * Bids after the one with id lastEventId are delivered, all of them
+     * for {@link #FROM_START}.
+     */
+    public BidStream(String auctionId, String lastEventId, VolleyApi.ResponseListener listener) {
+        this.auctionId = auctionId;
+        this.deliveredEventId = lastEventId;
+        this.listener = listener;
+    }
+
+    /**
+     * Connects, resuming after the last event delivered; call it on the
+     * main thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastEventId = deliveredEventId;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, TAG + "-" + auctionId);
+        thread.start();
+    }
+
+    /**
+     * Closes the connection; events already posted to the main thread are
+     * dropped as well and read again after the next start().
+     */
+    public synchronized void stop() {
+        running = false;
+        handler.removeCallbacksAndMessages(null);
+        HttpURLConnection c = connection;
+        if (c != null) {
+            c.disconnect();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * False for a reader thread that has been stopped, even if start() has
+     * already launched its replacement.
+     */
+    private boolean isCurrent() {
+        return thread == Thread.currentThread();
+    }
+
+    private void loop() {
+        while (isCurrent()) {
+            try {
+                read();
+            } catch (IOException e) {
+                if (isCurrent()) {
+                    Log.e(TAG, "stream dropped, reconnecting in " + retry + "ms: " + e);
+                }
+            }
+            if (!isCurrent()) {
+                return;
+            }
+            try {
+                Thread.sleep(retry);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retry = Math.min(retry * 2, MAX_RETRY_MS);
+        }
+    }
+
+    private void read() throws IOException {
+        String url = Uri.parse(ApiClient.baseUrl + "Biding/stream").buildUpon()
+                .appendQueryParameter("auction_id", auctionId)
+                .build().toString();
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        connection = c;
+        try {
+            c.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            c.setReadTimeout(READ_TIMEOUT_MS);
+            c.setRequestProperty("Accept", "text/event-stream");
+            if (lastEventId != null) {
+                c.setRequestProperty("Last-Event-ID", lastEventId);
+            }
+            if (c.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + c.getResponseCode());
+            }
+            retry = FIRST_RETRY_MS;
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(c.getInputStream(), "UTF-8"));
+            String id = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+            while (isCurrent() && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    // an id without data only moves the resume point, which the
+                    // server uses to mark where a fresh subscription starts
+                    if (id != null) {
+                        readUpTo(id);
+                    }
+                    if (data.length() > 0 || id != null) {
+                        deliver(data.length() > 0 ? data.toString() : null, id);
+                    }
+                    id = null;
+                    data.setLength(0);
+                } else if (line.startsWith("data:")) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    data.append(field(line, 5));
+                } else if (line.startsWith("id:")) {
+                    id = field(line, 3);
+                } else if (line.startsWith("retry:")) {
+                    try {
+                        retry = Long.parseLong(field(line, 6));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                // anything else, including ":" keepalive comments, is ignored
+            }
+            throw new IOException("stream closed by server");
+        } finally {
+            if (connection == c) {
+                connection = null;
+            }
+            c.disconnect();
+        }
+    }
+
+    private static String field(String line, int start) {
+        return line.startsWith(" ", start) ? line.substring(start + 1) : line.substring(start);
+    }
+
+    private synchronized void readUpTo(String id) {
+        // a stopped reader must not move the position its replacement starts from
+        if (isCurrent()) {
+            lastEventId = id;
+        }
+    }
+
+    /**
+     * Hands data, if any, to the listener on the main thread; only then does
+     * id count as delivered.
+     */
+    private void deliver(final String data, final String id) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!running) {
+                    return;
+                }
+                if (data != null) {
+                    listener._onNext(data);
+                }
+                if (id != null) {
+                    deliveredEventId = id;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,311 @@
+package io.com.didingapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Decoded images in two tiers, keyed by image id and target size
+ * ({@link #key}): one photo drawn at two sizes is two entries.
+ *
+ * The memory tier is an LRU of bitmaps holding {@link #MEMORY_FRACTION} of
+ * the heap. Under it, every bitmap put is also written to disk already
+ * downsampled, so a miss in memory decodes a file the size of the view
+ * rather than the original image, and nothing is fetched again after a
+ * restart. The disk tier is bounded by {@link #DISK_BYTES}, least recently
+ * used first. onTrimMemory shrinks the memory tier, down to nothing once
+ * the app is in the background.
+ *
+ * Bitmaps that drop out of memory and are no longer drawn (see
+ * {@link ImageLoader}) go to a pool of {@link #POOL_FRACTION} of the heap,
+ * and {@link #decode} decodes into them (inBitmap) instead of allocating,
+ * so scrolling through photos does not churn the heap.
+ */
+public class BitmapCache implements ComponentCallbacks2 {
+
+    private static final int MEMORY_FRACTION = 8;
+    private static final int POOL_FRACTION = 16;
+    private static final long DISK_BYTES = 20L * 1024 * 1024;
+
+    private static BitmapCache instance;
+
+    private final LruCache<String, Bitmap> memory;
+    private final File dir;
+    // bytes in dir, counted on the first write
+    private long diskBytes = -1;
+    // oldest first
+    private final ArrayList<Bitmap> pool = new ArrayList<>();
+    private final long maxPoolBytes = Runtime.getRuntime().maxMemory() / POOL_FRACTION;
+    private long poolBytes;
+
+    public static synchronized BitmapCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new BitmapCache(context.getApplicationContext());
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    private BitmapCache(Context context) {
+        dir = new File(context.getCacheDir(), "bitmaps");
+        memory = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / MEMORY_FRACTION)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bytes(bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    ImageLoader.removed(oldValue);
+                }
+            }
+        };
+    }
+
+    public static String key(String id, int width, int height) {
+        return id + '#' + width + 'x' + height;
+    }
+
+    public Bitmap getMemory(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * The disk copy, which then moves into memory. Reads a file, so not for
+     * the main thread.
+     */
+    public Bitmap getDisk(String key) {
+        File file = file(key);
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap bitmap = null;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            in.close();
+            // stored at its target size already
+            bitmap = decode(data, 0, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        // the modification time is the LRU order of the disk tier
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Adds bitmap to both tiers. Writes a file, so not for the main thread.
+     */
+    public void put(String key, Bitmap bitmap) {
+        memory.put(key, bitmap);
+        File file = file(key);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+            FileOutputStream out = new FileOutputStream(tmp);
+            // photos have no alpha and keep well as JPEG; anything else stays lossless
+            if (bitmap.hasAlpha()) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+            }
+            out.close();
+            if (tmp.renameTo(file)) {
+                added(file.length());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+        }
+    }
+
+    /**
+     * data decoded at the smallest power-of-two reduction that still covers
+     * width x height (0 x 0 for full size), into a pooled bitmap when one
+     * fits. Null when data is not an image.
+     */
+    public Bitmap decode(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // the header alone: how big the image is
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sample = 1;
+        while (width > 0 && height > 0
+                && options.outWidth / (sample * 2) >= width && options.outHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        options.inSampleSize = sample;
+        // and how big it comes out at that reduction
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // before KitKat a reused bitmap had to match exactly
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            options.inBitmap = takeReusable(options.outWidth * options.outHeight * 4);
+        }
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap could not take this image after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Offers bitmap for later decodes. Only for bitmaps that are out of the
+     * memory tier and drawn nowhere.
+     */
+    synchronized void reuse(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || bytes(bitmap) > maxPoolBytes) {
+            return;
+        }
+        pool.add(bitmap);
+        poolBytes += bytes(bitmap);
+        trimPool(maxPoolBytes);
+    }
+
+    /**
+     * The smallest pooled bitmap of at least byteCount bytes, and at most
+     * twice that so a thumbnail does not pin a full-size buffer; or null.
+     */
+    private synchronized Bitmap takeReusable(int byteCount) {
+        int best = -1;
+        for (int i = 0; i < pool.size(); i++) {
+            int size = bytes(pool.get(i));
+            if (size >= byteCount && size <= byteCount * 2 && (best < 0 || size < bytes(pool.get(best)))) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        Bitmap bitmap = pool.remove(best);
+        poolBytes -= bytes(bitmap);
+        return bitmap;
+    }
+
+    private synchronized void trimPool(long target) {
+        while (poolBytes > target && !pool.isEmpty()) {
+            poolBytes -= bytes(pool.remove(0));
+        }
+    }
+
+    private static int bytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private synchronized void added(long bytes) {
+        if (diskBytes < 0) {
+            diskBytes = 0;
+            File[] files = dir.listFiles();
+            for (File f : files != null ? files : new File[0]) {
+                diskBytes += f.length();
+            }
+        } else {
+            diskBytes += bytes;
+        }
+        if (diskBytes > DISK_BYTES) {
+            trimDisk(DISK_BYTES * 3 / 4);
+        }
+    }
+
+    private void trimDisk(long target) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : files) {
+            if (diskBytes <= target) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                diskBytes -= length;
+            }
+        }
+    }
+
+    private File file(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(dir, name.toString());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // evicted bitmaps reach the pool right away (this is the main thread), so it is trimmed after
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // the process is a kill candidate, or the foreground needs everything
+            memory.evictAll();
+            trimPool(0);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // also covers TRIM_MEMORY_UI_HIDDEN: nothing is on screen
+            memory.trimToSize(memory.maxSize() / 2);
+            trimPool(maxPoolBytes / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        memory.evictAll();
+        trimPool(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,373 @@
+package io.com.didingapp.Volley;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Auction photos uploaded in chunks that survive a dropped connection,
+ * for photos too big to send in one go on a poor network.
+ *
+ * The server keeps an upload session per auction and photo SHA-256
+ * (Upload/start), so asking again, after a failure or from a restarted
+ * screen, finds the same session and the offset it has reached. Each chunk
+ * (Upload/chunk) names its offset and carries its own SHA-256; the server
+ * appends it only at its current offset and only intact, and answers with
+ * the new offset. A connection that dies mid-chunk costs that chunk: after
+ * a backoff the offset is asked for again (Upload/status) and the upload
+ * carries on from there. The chunk reaching the end completes the photo,
+ * once the whole file matches its hash. The server keeps the completed
+ * session, so if that last answer is lost the status, or a new start,
+ * answers offset = length with the image row, and the photo counts as
+ * uploaded.
+ *
+ * Chunks start at {@link #FIRST_CHUNK}, double after each one that goes
+ * through and halve after each failure, between {@link #MIN_CHUNK} and
+ * {@link #MAX_CHUNK}: few requests on a good link, little resent on a bad
+ * one. Photos go one after another; the listener hears on the main thread.
+ */
+public class ChunkedUpload {
+
+    public interface Listener {
+        /**
+         * sent of total bytes of all photos are on the server.
+         */
+        void onProgress(int index, long sent, long total);
+
+        /**
+         * Photo index is stored; response is the answer that showed it complete, with its image row.
+         */
+        void onUploaded(int index, String response);
+
+        void onFinished();
+
+        /**
+         * Photo index could not be uploaded, and the ones after it were not tried.
+         * Starting again over the same files resumes where this stopped.
+         */
+        void onFailed(int index, Throwable error);
+    }
+
+    static final String START_PATH = "Upload/start";
+    static final String CHUNK_PATH = "Upload/chunk";
+    static final String STATUS_PATH = "Upload/status";
+
+    /**
+     * A photo bigger than this is worth uploading in chunks; smaller ones
+     * go together in one plain request instead.
+     */
+    public static final int CHUNKED_PHOTO_BYTES = 512 * 1024;
+    static final int FIRST_CHUNK = 256 * 1024;
+    static final int MIN_CHUNK = 64 * 1024;
+    static final int MAX_CHUNK = 1024 * 1024;
+    private static final long FIRST_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+    // failures in a row before the listener is told
+    private static final int MAX_FAILURES = 8;
+
+    private static final ExecutorService HASH = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "upload-hash");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final ApiClient client;
+    private final String auctionId;
+    private final List<File> files;
+    private final Listener listener;
+    private final long total;
+
+    // main thread only from here on
+    private int index;
+    private long done;
+    private String uploadId;
+    private long offset;
+    private int chunk = FIRST_CHUNK;
+    private int failures;
+    private long backoff = FIRST_BACKOFF_MS;
+    private boolean cancelled;
+
+    ChunkedUpload(Context context, String auctionId, List<File> files, Listener listener) {
+        this.client = ApiClient.getInstance(context);
+        this.auctionId = auctionId;
+        this.files = new ArrayList<>(files);
+        this.listener = listener;
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        this.total = bytes;
+    }
+
+    void start() {
+        nextPhoto();
+    }
+
+    /**
+     * Stops after the request in flight; the server keeps what it has.
+     */
+    public void cancel() {
+        cancelled = true;
+        MAIN.removeCallbacksAndMessages(this);
+    }
+
+    private void nextPhoto() {
+        if (cancelled) {
+            return;
+        }
+        if (index == files.size()) {
+            listener.onFinished();
+            return;
+        }
+        final File file = files.get(index);
+        HASH.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final String sha256 = sha256(file);
+                    MAIN.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            open(file, sha256);
+                        }
+                    });
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    private void open(final File file, final String sha256) {
+        if (cancelled) {
+            return;
+        }
+        client.startUpload(auctionId, sha256, file.length(), new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String response) {
+                if (accept(response, "200")) {
+                    carryOn(response);
+                }
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                retry(e, new Runnable() {
+                    @Override
+                    public void run() {
+                        open(file, sha256);
+                    }
+                });
+            }
+        });
+    }
+
+    private void sendChunk() {
+        if (cancelled) {
+            return;
+        }
+        File file = files.get(index);
+        int length = (int) Math.min(chunk, file.length() - offset);
+        client.uploadChunk(uploadId, offset, file, length, new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String response) {
+                onChunk(response);
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                // where it stopped is unknown: ask the server
+                chunk = Math.max(chunk / 2, MIN_CHUNK);
+                retry(e, new Runnable() {
+                    @Override
+                    public void run() {
+                        resume();
+                    }
+                });
+            }
+        });
+    }
+
+    private void onChunk(String response) {
+        if (cancelled) {
+            return;
+        }
+        try {
+            String status = new JSONObject(response).getJSONArray("msg").getJSONObject(0).getString("status");
+            if (status.equals("409")) {
+                // an earlier chunk got through though its answer did not; go on from the server's offset
+                if (accept(response, "409")) {
+                    carryOn(response);
+                }
+                return;
+            }
+            if (status.equals("422")) {
+                // damaged on the way, or the photo as a whole did not match: resend from the server's offset
+                chunk = Math.max(chunk / 2, MIN_CHUNK);
+                if (accept(response, "422")) {
+                    retry(new IOException("chunk refused at " + offset), new Runnable() {
+                        @Override
+                        public void run() {
+                            sendChunk();
+                        }
+                    });
+                }
+                return;
+            }
+            if (!accept(response, "200")) {
+                return;
+            }
+        } catch (JSONException e) {
+            fail(e);
+            return;
+        }
+        failures = 0;
+        backoff = FIRST_BACKOFF_MS;
+        chunk = Math.min(chunk * 2, MAX_CHUNK);
+        carryOn(response);
+    }
+
+    /**
+     * Sends the next chunk from the accepted offset, or, with the whole
+     * photo on the server, moves on to the next photo; response is the
+     * answer that gave the offset.
+     */
+    private void carryOn(String response) {
+        File file = files.get(index);
+        listener.onProgress(index, done + offset, total);
+        if (offset < file.length()) {
+            sendChunk();
+            return;
+        }
+        listener.onUploaded(index, response);
+        done += file.length();
+        index++;
+        uploadId = null;
+        offset = 0;
+        chunk = FIRST_CHUNK;
+        nextPhoto();
+    }
+
+    private void resume() {
+        if (cancelled) {
+            return;
+        }
+        client.uploadStatus(uploadId, new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String response) {
+                if (accept(response, "200")) {
+                    carryOn(response);
+                }
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                retry(e, new Runnable() {
+                    @Override
+                    public void run() {
+                        resume();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Takes the session and offset from response if its status is expected;
+     * otherwise fails the photo and returns false.
+     */
+    private boolean accept(String response, String expected) {
+        try {
+            JSONObject json = new JSONObject(response);
+            JSONObject msg = json.getJSONArray("msg").getJSONObject(0);
+            if (!msg.getString("status").equals(expected)) {
+                fail(new IOException(msg.getString("status") + " " + msg.optString("msg")));
+                return false;
+            }
+            JSONObject upload = json.getJSONObject("upload");
+            uploadId = upload.getString("id");
+            offset = Long.parseLong(upload.getString("offset"));
+            return true;
+        } catch (JSONException | NumberFormatException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Runs again after the backoff, unless there were too many failures in a
+     * row or the server turned the request down outright.
+     */
+    private void retry(Throwable e, Runnable again) {
+        e.printStackTrace();
+        VolleyError error = e instanceof VolleyError ? (VolleyError) e : null;
+        boolean refused = error != null && error.networkResponse != null && error.networkResponse.statusCode < 500;
+        if (refused || ++failures > MAX_FAILURES) {
+            fail(e);
+            return;
+        }
+        MAIN.postAtTime(again, this, SystemClock.uptimeMillis() + backoff);
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+    }
+
+    private void fail(final Throwable e) {
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) {
+                    cancelled = true;
+                    listener.onFailed(index, e);
+                }
+            }
+        });
+    }
+
+    private static String sha256(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
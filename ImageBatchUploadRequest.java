@@ -0,0 +1,182 @@
+package io.com.didingapp.Volley;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * All photos of an auction in one multipart/form-data POST, one "photo"
+ * part per file, streamed from the files as the request goes out (see
+ * {@link StreamingBody}): one connection, one set of headers and one
+ * response however many photos there are, and never more than a buffer's
+ * worth of image in memory.
+ *
+ * The response lists a status per part in upload order, so the caller can
+ * keep just the photos that failed for another try.
+ *
+ * Parts are named "photo" unless names are given, one per file, as for
+ * the renditions of a photo, which are named after their size.
+ */
+public class ImageBatchUploadRequest extends Request<String> implements StreamingBody {
+
+    public interface Progress {
+        /**
+         * Part index (0-based) of count has started going out. Main thread.
+         */
+        void onPart(int index, int count);
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final String CRLF = "\r\n";
+
+    private final String boundary = "----auction" + UUID.randomUUID().toString().replace("-", "");
+    private final List<File> files;
+    private final List<String> names;
+    private final String contentType;
+    private final Priority priority;
+    private final VolleyApi.ResponseListener listener;
+    private final Progress progress;
+
+    public ImageBatchUploadRequest(String url, String contentType, List<File> files, Priority priority,
+                                   VolleyApi.ResponseListener listener, Progress progress) {
+        this(url, contentType, files, null, priority, listener, progress);
+    }
+
+    public ImageBatchUploadRequest(String url, String contentType, List<File> files, List<String> names,
+                                   Priority priority, final VolleyApi.ResponseListener listener, Progress progress) {
+        super(Method.POST, url, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                listener._onResponseError(error);
+            }
+        });
+        this.files = new ArrayList<>(files);
+        this.names = names != null ? new ArrayList<>(names) : null;
+        this.contentType = contentType;
+        this.priority = priority;
+        this.listener = listener;
+        this.progress = progress;
+        setShouldCache(false);
+        // resending is harmless, the server stores each image under its hash
+        setRetryPolicy(new DefaultRetryPolicy(60000, 1, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * The whole body at once, for stacks that cannot stream.
+     */
+    @Override
+    public byte[] getBody() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(contentLength(), 0));
+        try {
+            writeBody(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public long contentLength() {
+        long length = 0;
+        for (int i = 0; i < files.size(); i++) {
+            length += partHeader(i).length + files.get(i).length() + CRLF.length();
+        }
+        return length + closing().length;
+    }
+
+    @Override
+    public void writeBody(OutputStream out) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        for (int i = 0; i < files.size(); i++) {
+            notifyPart(i);
+            out.write(partHeader(i));
+            InputStream in = new FileInputStream(files.get(i));
+            try {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            out.write(CRLF.getBytes("US-ASCII"));
+        }
+        out.write(closing());
+    }
+
+    private byte[] partHeader(int index) {
+        String name = names != null ? names.get(index) : "photo";
+        String header = "--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + name + index + ".jpg\"" + CRLF
+                + "Content-Type: " + contentType + CRLF
+                + CRLF;
+        return ascii(header);
+    }
+
+    private byte[] closing() {
+        return ascii("--" + boundary + "--" + CRLF);
+    }
+
+    private static byte[] ascii(String text) {
+        try {
+            return text.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void notifyPart(final int index) {
+        if (progress == null) {
+            return;
+        }
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                progress.onPart(index, files.size());
+            }
+        });
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected Response<String> parseNetworkResponse(NetworkResponse response) {
+        String parsed;
+        try {
+            parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+        } catch (UnsupportedEncodingException e) {
+            parsed = new String(response.data);
+        }
+        return Response.success(parsed, null);
+    }
+
+    @Override
+    protected void deliverResponse(String response) {
+        listener._onNext(response);
+    }
+}
@@ -0,0 +1,384 @@
+package io.com.didingapp;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.com.didingapp.Volley.ImageRenditions;
+
+/**
+ * What Utility.setImage hands its work to: puts an image into an ImageView
+ * at the size the view draws it, through {@link BitmapCache}.
+ *
+ * An image is a URL, as auction photos are served now, a file:// URI for
+ * a local file, or inline base64, as the login response still carries the
+ * profile photo. A memory hit is
+ * shown straight away. Anything else goes through two background stages:
+ * downloads on their own threads, so a slow network never holds up photos
+ * that are already on disk, and decodes, which read the image bounds first
+ * and decode at the view's size into a reused bitmap where one fits. Views
+ * asking for an image that is already loading at that size wait for the
+ * same result, so a recycler scrolling back and forth decodes each photo
+ * once. Stored photos are fetched at the smallest rendition that covers
+ * the view (see {@link ImageRenditions}), so a list cell downloads and
+ * decodes a thumbnail rather than the full photo.
+ *
+ * A row recycled before its image arrives should call {@link #cancel}: a
+ * load no view is waiting for any more is dropped before its download or
+ * decode starts, and the row's bitmap becomes reusable once the cache lets
+ * go of it too.
+ */
+public final class ImageLoader {
+
+    private static final Executor FETCH = Executors.newFixedThreadPool(3, threads("image-fetch"));
+    private static final Executor DECODE = Executors.newFixedThreadPool(2, threads("image-decode"));
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    // main thread only from here on
+    private static BitmapCache cache;
+    // the key each view last asked for, and the bitmap it shows
+    private static final Map<ImageView, String> requested = new WeakHashMap<>();
+    private static final Map<ImageView, Bitmap> shown = new WeakHashMap<>();
+    private static final Map<String, Load> loading = new HashMap<>();
+    // bitmaps handed to views at some point, and those of them the cache has dropped
+    private static final Set<Bitmap> delivered = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    private static final Set<Bitmap> dropped = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+    private ImageLoader() {
+    }
+
+    private static ThreadFactory threads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Shows image in view; null or empty clears it. Main thread only.
+     */
+    public static void setImage(ImageView view, String image) {
+        if (image == null || image.isEmpty()) {
+            cancel(view);
+            return;
+        }
+        int width = targetWidth(view);
+        int height = targetHeight(view);
+        image = ImageRenditions.forView(image, width, height);
+        String key = BitmapCache.key(id(image), width, height);
+        if (key.equals(requested.get(view))) {
+            // already showing it, or waiting for it
+            return;
+        }
+
+        cache = BitmapCache.getInstance(view.getContext());
+        Bitmap bitmap = cache.getMemory(key);
+        if (bitmap != null) {
+            release(view);
+            requested.put(view, key);
+            show(view, bitmap);
+            return;
+        }
+
+        // not the previous row's photo while this one loads
+        cancel(view);
+        requested.put(view, key);
+        Load load = loading.get(key);
+        if (load == null) {
+            load = new Load(cache, key, image, width, height);
+            loading.put(key, load);
+            DECODE.execute(load);
+        }
+        load.views.add(view);
+    }
+
+    /**
+     * Clears view and stops waiting for its image. For a recycled row, or one
+     * about to show something else. Main thread only.
+     */
+    public static void cancel(ImageView view) {
+        release(view);
+        view.setImageDrawable(null);
+    }
+
+    private static void release(ImageView view) {
+        String key = requested.remove(view);
+        Load load = key != null ? loading.get(key) : null;
+        if (load != null && load.views.remove(view) && load.views.isEmpty()) {
+            load.cancelled = true;
+            loading.remove(key);
+        }
+        Bitmap bitmap = shown.remove(view);
+        if (bitmap != null && dropped.contains(bitmap) && !shown.containsValue(bitmap)) {
+            pool(bitmap);
+        }
+    }
+
+    private static void show(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        shown.put(view, bitmap);
+    }
+
+    /**
+     * Called by the cache for each bitmap leaving the memory tier, on any
+     * thread. One that no view draws can be decoded into; one still on
+     * screen, or on its way there, waits until its views let go of it.
+     */
+    static void removed(final Bitmap bitmap) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            MAIN.post(new Runnable() {
+                @Override
+                public void run() {
+                    removed(bitmap);
+                }
+            });
+            return;
+        }
+        if (delivered.contains(bitmap) && !shown.containsValue(bitmap)) {
+            pool(bitmap);
+        } else {
+            dropped.add(bitmap);
+        }
+    }
+
+    private static void pool(Bitmap bitmap) {
+        delivered.remove(bitmap);
+        dropped.remove(bitmap);
+        cache.reuse(bitmap);
+    }
+
+    private static void deliver(Load load, Bitmap bitmap) {
+        if (loading.get(load.key) == load) {
+            loading.remove(load.key);
+        }
+        if (bitmap == null) {
+            // forget the request, so asking again retries
+            for (ImageView view : load.views) {
+                requested.remove(view);
+            }
+            return;
+        }
+        delivered.add(bitmap);
+        for (ImageView view : load.views) {
+            show(view, bitmap);
+        }
+        if (load.views.isEmpty() && dropped.contains(bitmap)) {
+            pool(bitmap);
+        }
+    }
+
+    /**
+     * One image at one size, and the views waiting for it (main thread
+     * only). Runs on DECODE, with a hop to FETCH for a download.
+     */
+    private static class Load implements Runnable {
+        final BitmapCache cache;
+        final String key;
+        final String image;
+        final int width;
+        final int height;
+        final ArrayList<ImageView> views = new ArrayList<>();
+        // every view went away: skip whatever has not started yet
+        volatile boolean cancelled;
+        private byte[] data;
+
+        Load(BitmapCache cache, String key, String image, int width, int height) {
+            this.cache = cache;
+            this.key = key;
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                finish(null);
+                return;
+            }
+            if (data == null) {
+                Bitmap bitmap = cache.getDisk(key);
+                if (bitmap != null) {
+                    finish(bitmap);
+                    return;
+                }
+                if (isUrl(image)) {
+                    FETCH.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            fetch();
+                        }
+                    });
+                    return;
+                }
+                try {
+                    data = isFile(image) ? read(new File(Uri.parse(image).getPath())) : Base64.decode(image, Base64.DEFAULT);
+                } catch (IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                    finish(null);
+                    return;
+                }
+            }
+            Bitmap bitmap = cache.decode(data, width, height);
+            data = null;
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+            finish(bitmap);
+        }
+
+        private void fetch() {
+            if (cancelled) {
+                finish(null);
+                return;
+            }
+            try {
+                data = download(image);
+            } catch (IOException e) {
+                e.printStackTrace();
+                finish(null);
+                return;
+            }
+            DECODE.execute(this);
+        }
+
+        private void finish(final Bitmap bitmap) {
+            MAIN.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Load.this, bitmap);
+                }
+            });
+        }
+    }
+
+    /**
+     * URLs name their content already (the server keys photos by hash), as
+     * do the app's own files; an inline image is named by a hash of itself.
+     */
+    private static String id(String image) {
+        if (isUrl(image) || isFile(image)) {
+            return image;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(image.getBytes("UTF-8"));
+            return "inline:" + Base64.encodeToString(hash, Base64.NO_WRAP | Base64.URL_SAFE);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isUrl(String image) {
+        return image.startsWith("http://") || image.startsWith("https://");
+    }
+
+    private static boolean isFile(String image) {
+        return image.startsWith("file:");
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        byte[] data = new byte[(int) file.length()];
+        int read = 0;
+        while (read < data.length) {
+            int n = in.read(data, read, data.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        in.close();
+        return data;
+    }
+
+    /**
+     * The view's width once laid out; before that the first fixed width
+     * among it and its parents (a wrap_content image in a fixed-size cell
+     * is no wider than the cell), or else the screen's.
+     */
+    private static int targetWidth(ImageView view) {
+        if (view.getWidth() > 0) {
+            return view.getWidth();
+        }
+        for (View v = view; v != null; v = parentView(v)) {
+            ViewGroup.LayoutParams params = v.getLayoutParams();
+            if (params != null && params.width > 0) {
+                return params.width;
+            }
+        }
+        DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+        return metrics.widthPixels;
+    }
+
+    private static int targetHeight(ImageView view) {
+        if (view.getHeight() > 0) {
+            return view.getHeight();
+        }
+        for (View v = view; v != null; v = parentView(v)) {
+            ViewGroup.LayoutParams params = v.getLayoutParams();
+            if (params != null && params.height > 0) {
+                return params.height;
+            }
+        }
+        DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+        return metrics.heightPixels;
+    }
+
+    private static View parentView(View view) {
+        ViewParent parent = view.getParent();
+        return parent instanceof View ? (View) parent : null;
+    }
+
+    private static byte[] download(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + connection.getResponseCode() + " for " + url);
+            }
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(connection.getContentLength(), 8192));
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            in.close();
+            return out.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
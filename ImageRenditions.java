@@ -0,0 +1,43 @@
+package io.com.didingapp.Volley;
+
+/**
+ * The fixed ladder of sizes every auction photo is stored at: thumb and
+ * medium renditions, made once when the photo is encoded for upload, and
+ * the full photo. A stored image URL (images/&lt;hash&gt;) takes ?size=
+ * to ask for a rendition; the server answers with the full photo where it
+ * has none, so any size can be asked for any photo.
+ */
+public final class ImageRenditions {
+
+    public static final String THUMB = "thumb";
+    public static final String MEDIUM = "medium";
+
+    /**
+     * Rendition names and their long sides in pixels, smallest first. A
+     * thumb covers a 60dp list cell at 4x density; the full photo is
+     * PhotoEncoder.MAX_SIDE.
+     */
+    public static final String[] NAMES = {THUMB, MEDIUM};
+    public static final int[] SIDES = {240, 720};
+
+    private ImageRenditions() {
+    }
+
+    /**
+     * url of the smallest rendition that still covers a width x height
+     * view; other URLs, and views bigger than every rendition, get url as
+     * it is.
+     */
+    public static String forView(String url, int width, int height) {
+        if (!url.startsWith(ApiClient.baseUrl + "images/") || url.indexOf('?') >= 0) {
+            return url;
+        }
+        int side = Math.max(width, height);
+        for (int i = 0; i < NAMES.length; i++) {
+            if (SIDES[i] >= side) {
+                return url + "?size=" + NAMES[i];
+            }
+        }
+        return url;
+    }
+}
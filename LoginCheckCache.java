@@ -0,0 +1,134 @@
+package io.com.didingapp.Volley;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Coalescing front for {@link ApiClient#loginCheck}.
+ *
+ * dashBoard asks for the user row on every onCreate/onResume. Calls for the
+ * same mobile and fields that arrive while one is already in flight wait for
+ * that response instead of starting their own, and a successful response is
+ * replayed for {@link #ttlMillis}. Each caller names the columns it reads, so
+ * where the backend takes a field list (see {@link ApiClient#loginCheck})
+ * the OTP screen gets the otp alone and the dashboard no inline photo or OTP.
+ * Anything that changes the user row (balance, profile, registration) must
+ * call {@link #invalidate(String)} or {@link #invalidateAll()}. A call
+ * already in flight then still answers the callers waiting on it, but later
+ * callers do not join it and its response, which may predate the change,
+ * is not cached.
+ */
+public class LoginCheckCache {
+
+    private static LoginCheckCache instance;
+
+    /**
+     * How long a successful response is served without going to the network.
+     */
+    public static long ttlMillis = 30 * 1000;
+
+    private final Map<String, ArrayList<VolleyApi.ResponseListener>> inFlight = new HashMap<>();
+    private final Map<String, Entry> responses = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    public static synchronized LoginCheckCache getInstance() {
+        if (instance == null) {
+            instance = new LoginCheckCache();
+        }
+        return instance;
+    }
+
+    public synchronized void loginCheck(Activity activity, final VolleyApi.ResponseListener listener, String mobile,
+                                        String... fields) {
+        // responses differ by field list, so each list is cached on its own
+        final String key = mobile + "?" + TextUtils.join(",", fields);
+        final Entry entry = responses.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.time < ttlMillis) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener._onNext(entry.response);
+                }
+            });
+            return;
+        }
+
+        ArrayList<VolleyApi.ResponseListener> waiting = inFlight.get(key);
+        if (waiting != null) {
+            waiting.add(listener);
+            return;
+        }
+        final ArrayList<VolleyApi.ResponseListener> call = new ArrayList<>();
+        call.add(listener);
+        inFlight.put(key, call);
+
+        ApiClient.getInstance(activity).loginCheck(activity, new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String obj) {
+                for (VolleyApi.ResponseListener l : complete(key, call, obj)) {
+                    l._onNext(obj);
+                }
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                for (VolleyApi.ResponseListener l : complete(key, call, null)) {
+                    l._onResponseError(e);
+                }
+            }
+        }, mobile, fields);
+    }
+
+    public synchronized void invalidate(String mobile) {
+        remove(responses, mobile + "?");
+        // calls in flight are detached: their waiters are still answered, nothing else joins or caches them
+        remove(inFlight, mobile + "?");
+    }
+
+    public synchronized void invalidateAll() {
+        responses.clear();
+        inFlight.clear();
+    }
+
+    private static void remove(Map<String, ?> map, String prefix) {
+        for (Iterator<String> keys = map.keySet().iterator(); keys.hasNext(); ) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * The callers waiting on call. Its response is cached only if call was
+     * not invalidated while in flight.
+     */
+    private synchronized ArrayList<VolleyApi.ResponseListener> complete(String key,
+                                                                        ArrayList<VolleyApi.ResponseListener> call,
+                                                                        String response) {
+        if (inFlight.get(key) != call) {
+            return call;
+        }
+        inFlight.remove(key);
+        if (response != null) {
+            responses.put(key, new Entry(response, System.currentTimeMillis()));
+        }
+        return call;
+    }
+
+    private static class Entry {
+        final String response;
+        final long time;
+
+        Entry(String response, long time) {
+            this.response = response;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.com.didingapp.Volley;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+/**
+ * Debug aid that logs main-thread work longer than one frame.
+ *
+ * Once installed, every message the main looper dispatches is timed through
+ * its logging hook, and TypedListener callbacks are timed on their own so
+ * the log names the listener class instead of a Handler. Nothing is
+ * measured until {@link #install()} is called.
+ */
+public final class MainThreadWatchdog {
+
+    private static final String TAG = "MainThreadWatchdog";
+    public static final long FRAME_MILLIS = 16;
+
+    private static volatile boolean installed;
+
+    private MainThreadWatchdog() {
+    }
+
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        Looper.getMainLooper().setMessageLogging(new Printer() {
+            private long start;
+
+            @Override
+            public void println(String x) {
+                // the looper prints ">>>>> Dispatching to ..." before a message
+                // and "<<<<< Finished to ..." after it
+                if (x.startsWith(">>>>>")) {
+                    start = SystemClock.uptimeMillis();
+                } else if (x.startsWith("<<<<<")) {
+                    long took = SystemClock.uptimeMillis() - start;
+                    if (took > FRAME_MILLIS) {
+                        Log.w(TAG, took + "ms on the main thread: " + x.substring(6));
+                    }
+                }
+            }
+        });
+    }
+
+    static void check(Object callback, long startUptimeMillis) {
+        if (!installed) {
+            return;
+        }
+        long took = SystemClock.uptimeMillis() - startUptimeMillis;
+        if (took > FRAME_MILLIS) {
+            Log.w(TAG, callback.getClass().getName() + " callback took " + took + "ms on the main thread");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.com.didingapp.Volley;
+
+import android.os.SystemClock;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * HTTP stack wrapper feeding {@link ApiMetrics}.
+ *
+ * ttfb runs from handing the request on until the response headers are
+ * in, so it includes DNS, connect and TLS when a request needs a new
+ * connection; {@link OkHttpStack} records those separately from OkHttp's
+ * own events. The body stream is counted as it is read, and "network"
+ * stops when it is drained or closed.
+ */
+public class MeteredStack extends BaseHttpStack {
+
+    private final BaseHttpStack delegate;
+
+    public MeteredStack(BaseHttpStack delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        final ApiMetrics metrics = ApiMetrics.getInstance();
+        final String endpoint = ApiMetrics.endpointOf(request);
+        final long start = SystemClock.elapsedRealtime();
+
+        Long queued = metrics.takeQueuedAt(request);
+        if (queued != null) {
+            metrics.record(endpoint, ApiMetrics.QUEUE_WAIT, start - queued);
+        }
+
+        // failures are counted by the wrapped listener, which sees every kind
+        HttpResponse response = delegate.executeRequest(request, additionalHeaders);
+        metrics.record(endpoint, ApiMetrics.TTFB, SystemClock.elapsedRealtime() - start);
+
+        InputStream content = response.getContent();
+        if (content == null) {
+            metrics.record(endpoint, ApiMetrics.NETWORK, SystemClock.elapsedRealtime() - start);
+            return response;
+        }
+        return new HttpResponse(response.getStatusCode(), response.getHeaders(), response.getContentLength(),
+                new CountingInputStream(content, metrics, endpoint, start));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final ApiMetrics metrics;
+        private final String endpoint;
+        private final long start;
+        private long bytes;
+        private boolean reported;
+
+        CountingInputStream(InputStream in, ApiMetrics metrics, String endpoint, long start) {
+            super(in);
+            this.metrics = metrics;
+            this.endpoint = endpoint;
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                report();
+            } else {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n < 0) {
+                report();
+            } else {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            report();
+            super.close();
+        }
+
+        private void report() {
+            if (reported) {
+                return;
+            }
+            reported = true;
+            metrics.record(endpoint, ApiMetrics.NETWORK, SystemClock.elapsedRealtime() - start);
+            metrics.recordWireBytes(endpoint, bytes);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.com.didingapp.Volley;
+
+import android.os.SystemClock;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * Volley transport on OkHttp.
+ *
+ * Connections are kept alive in a shared pool and negotiated as HTTP/2 when
+ * the server offers it over TLS, so back-to-back calls to the backend (a
+ * bid and the balance update after it, say) reuse one connection instead
+ * of paying TCP and TLS setup again. The per-request timeout of the Volley
+ * retry policy is applied on a derived client that shares the pool.
+ * Requests implementing {@link StreamingBody} are written to the socket as
+ * they go.
+ *
+ * DNS lookups and connection setups (TLS included) are timed by OkHttp's
+ * own events and recorded in {@link ApiMetrics} under the request's
+ * endpoint; a call on a pooled connection has neither.
+ */
+public class OkHttpStack extends BaseHttpStack {
+
+    private static final EventListener.Factory METRICS = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            Object tag = call.request().tag();
+            return new MetricsListener(tag instanceof String ? (String) tag : null);
+        }
+    };
+
+    private final OkHttpClient client;
+
+    public OkHttpStack(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * A client keeping up to maxIdleConnections idle connections open for
+     * keepAliveMillis each.
+     */
+    public static OkHttpClient pooledClient(int maxIdleConnections, long keepAliveMillis) {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .build();
+    }
+
+    @Override
+    public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        int timeoutMs = request.getTimeoutMs();
+        OkHttpClient call = client.newBuilder()
+                .connectTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .eventListenerFactory(METRICS)
+                .build();
+
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.getUrl())
+                .tag(ApiMetrics.endpointOf(request));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        for (Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        setMethod(builder, request);
+
+        Response response = call.newCall(builder.build()).execute();
+
+        List<Header> headers = new ArrayList<>();
+        okhttp3.Headers responseHeaders = response.headers();
+        for (int i = 0; i < responseHeaders.size(); i++) {
+            headers.add(new Header(responseHeaders.name(i), responseHeaders.value(i)));
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            return new HttpResponse(response.code(), headers);
+        }
+        return new HttpResponse(response.code(), headers, (int) body.contentLength(), body.byteStream());
+    }
+
+    private static void setMethod(okhttp3.Request.Builder builder, Request<?> request) throws AuthFailureError {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                byte[] postBody = request.getBody();
+                if (postBody != null) {
+                    builder.post(body(request, postBody));
+                }
+                break;
+            case Request.Method.GET:
+                builder.get();
+                break;
+            case Request.Method.DELETE:
+                builder.delete();
+                break;
+            case Request.Method.POST:
+                if (request instanceof StreamingBody) {
+                    builder.post(streamingBody(request));
+                } else {
+                    builder.post(body(request, request.getBody()));
+                }
+                break;
+            case Request.Method.PUT:
+                builder.put(body(request, request.getBody()));
+                break;
+            case Request.Method.HEAD:
+                builder.head();
+                break;
+            case Request.Method.OPTIONS:
+                builder.method("OPTIONS", null);
+                break;
+            case Request.Method.TRACE:
+                builder.method("TRACE", null);
+                break;
+            case Request.Method.PATCH:
+                builder.patch(body(request, request.getBody()));
+                break;
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    private static RequestBody body(Request<?> request, byte[] body) {
+        return RequestBody.create(MediaType.parse(request.getBodyContentType()), body != null ? body : new byte[0]);
+    }
+
+    private static RequestBody streamingBody(Request<?> request) {
+        final MediaType type = MediaType.parse(request.getBodyContentType());
+        final StreamingBody body = (StreamingBody) request;
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return type;
+            }
+
+            @Override
+            public long contentLength() {
+                return body.contentLength();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                body.writeBody(sink.outputStream());
+            }
+        };
+    }
+
+    /**
+     * Times one call's DNS lookup and connection attempts; endpoint is null
+     * for a call not made through {@link #executeRequest}.
+     */
+    private static class MetricsListener extends EventListener {
+        private final String endpoint;
+        private long dnsStart;
+        private long connectStart;
+
+        MetricsListener(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            if (endpoint != null) {
+                ApiMetrics.getInstance().record(endpoint, ApiMetrics.DNS, SystemClock.elapsedRealtime() - dnsStart);
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (endpoint != null) {
+                ApiMetrics.getInstance().record(endpoint, ApiMetrics.CONNECT,
+                        SystemClock.elapsedRealtime() - connectStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package io.com.didingapp.Volley;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Durable queue for writes (bids, auction create/update).
+ *
+ * A write is appended to outbox.json before anything goes on the wire and
+ * only removed once the server has answered it. Each
+ * {@link RequestScheduler.Lane} sends its entries in order, one at a time,
+ * so a bid does not wait behind an unrelated auction create or update.
+ * Writes to the same auction stay strictly in order across lanes: an entry
+ * waits while an earlier one for its auction is still queued, so a bid is
+ * never sent ahead of the update it was placed after. Network failures and
+ * 5xx responses are retried with exponential backoff, kept per lane, also
+ * after the app restarts. Every entry carries a
+ * client-generated idempotency key (form field and Idempotency-Key header)
+ * so the backend can answer a replayed write with its stored response
+ * instead of inserting it twice. A 404 or 405 means the route is not
+ * deployed yet, not that the write was refused, so those are retried too,
+ * but only {@link #MAX_MISSING_ROUTE_RETRIES} times before the write fails
+ * like any other rejected one.
+ *
+ * Listeners are held for the screen that queued the write; it calls
+ * {@link #detach(Object)} when it is destroyed, and a write answered after
+ * that completes without a callback.
+ */
+public class Outbox {
+
+    private static final String TAG = "Outbox";
+    private static final String FILE_NAME = "outbox.json";
+    private static final long FIRST_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final int MAX_MISSING_ROUTE_RETRIES = 3;
+
+    private static Outbox instance;
+
+    private final Context context;
+    private final File file;
+    private final LinkedList<Entry> entries = new LinkedList<>();
+    private final Map<String, VolleyApi.ResponseListener> listeners = new HashMap<>();
+    private final Map<String, Object> owners = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final EnumSet<RequestScheduler.Lane> sending = EnumSet.noneOf(RequestScheduler.Lane.class);
+    // lanes whose head failed and is waiting out its backoff; still counted as sending
+    private final EnumSet<RequestScheduler.Lane> backingOff = EnumSet.noneOf(RequestScheduler.Lane.class);
+    private final EnumMap<RequestScheduler.Lane, Long> backoff = new EnumMap<>(RequestScheduler.Lane.class);
+
+    private Outbox(Context context) {
+        this.context = context;
+        file = new File(context.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    public static synchronized Outbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new Outbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a POST of params to path and starts sending. The listener gets
+     * the server's answer if owner has not been {@link #detach(Object)
+     * detached} by the time it arrives.
+     *
+     * @return the idempotency key of the queued write
+     */
+    public synchronized String enqueue(Object owner, String path, Map<String, String> params,
+                                       VolleyApi.ResponseListener listener) {
+        Entry entry = new Entry(UUID.randomUUID().toString(), path, new HashMap<>(params));
+        entries.addLast(entry);
+        if (listener != null) {
+            listeners.put(entry.key, listener);
+            owners.put(entry.key, owner);
+        }
+        save();
+        flush();
+        return entry.key;
+    }
+
+    /**
+     * Drops the listeners of owner's writes, which stay queued; call it from
+     * the owning activity's onDestroy so the outbox does not keep it alive.
+     */
+    public synchronized void detach(Object owner) {
+        Iterator<Map.Entry<String, Object>> it = owners.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Object> pair = it.next();
+            if (pair.getValue() == owner) {
+                listeners.remove(pair.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int pending() {
+        return entries.size();
+    }
+
+    /**
+     * Sends the head of the queue now, cutting any backoff short, e.g. when
+     * a screen resumes or connectivity comes back.
+     */
+    public synchronized void flush() {
+        handler.removeCallbacksAndMessages(null);
+        sending.removeAll(backingOff);
+        backingOff.clear();
+        backoff.clear();
+        sendNext();
+    }
+
+    /**
+     * Sends the head of every idle lane, unless an earlier entry for the
+     * same auction is still queued on another lane.
+     */
+    private synchronized void sendNext() {
+        EnumSet<RequestScheduler.Lane> seen = EnumSet.noneOf(RequestScheduler.Lane.class);
+        HashSet<String> auctions = new HashSet<>();
+        for (Entry entry : entries) {
+            RequestScheduler.Lane lane = ApiClient.writeLane(entry.path);
+            boolean head = seen.add(lane);
+            String auction = entry.auction();
+            boolean firstForAuction = auction == null || auctions.add(auction);
+            if (head && firstForAuction && !sending.contains(lane)) {
+                sending.add(lane);
+                send(entry, lane);
+            }
+        }
+    }
+
+    private void send(final Entry entry, final RequestScheduler.Lane lane) {
+        StringRequest request = new StringRequest(Request.Method.POST, ApiClient.baseUrl + entry.path,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        VolleyApi.ResponseListener listener = complete(entry);
+                        if (listener != null) {
+                            listener._onNext(response);
+                        }
+                        sendNext();
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        if (isRetryable(error) && countRetry(entry, error)) {
+                            retryLater(lane, error);
+                        } else {
+                            Log.e(TAG, "write to " + entry.path + " rejected, dropping it: " + error);
+                            VolleyApi.ResponseListener listener = complete(entry);
+                            if (listener != null) {
+                                listener._onResponseError(error);
+                            }
+                            sendNext();
+                        }
+                    }
+                }) {
+            @Override
+            protected Map<String, String> getParams() throws AuthFailureError {
+                Map<String, String> params = new HashMap<>(entry.params);
+                params.put("idempotency_key", entry.key);
+                return params;
+            }
+
+            @Override
+            public Map<String, String> getHeaders() throws AuthFailureError {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Idempotency-Key", entry.key);
+                return headers;
+            }
+
+            @Override
+            public Priority getPriority() {
+                return lane.priority;
+            }
+        };
+        // retries are ours, with backoff; Volley must not resend behind our back
+        request.setRetryPolicy(new DefaultRetryPolicy(10000, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        request.setShouldCache(false);
+
+        ApiClient.getInstance(context).add(ApiClient.writeEndpoint(entry.path), request, lane);
+    }
+
+    private synchronized VolleyApi.ResponseListener complete(Entry entry) {
+        RequestScheduler.Lane lane = ApiClient.writeLane(entry.path);
+        sending.remove(lane);
+        backoff.remove(lane);
+        entries.remove(entry);
+        save();
+        owners.remove(entry.key);
+        return listeners.remove(entry.key);
+    }
+
+    /**
+     * Counts a retry of entry against a missing route; false once it has
+     * had its {@link #MAX_MISSING_ROUTE_RETRIES}. Other failures are not
+     * counted and always retried.
+     */
+    private synchronized boolean countRetry(Entry entry, VolleyError error) {
+        if (!isMissingRoute(error)) {
+            return true;
+        }
+        if (entry.missingRoute >= MAX_MISSING_ROUTE_RETRIES) {
+            return false;
+        }
+        entry.missingRoute++;
+        save();
+        return true;
+    }
+
+    private synchronized void retryLater(final RequestScheduler.Lane lane, VolleyError error) {
+        Long last = backoff.get(lane);
+        long delay = last == null ? FIRST_BACKOFF_MS : Math.min(last * 2, MAX_BACKOFF_MS);
+        backoff.put(lane, delay);
+        backingOff.add(lane);
+        Log.e(TAG, "write failed, retrying in " + delay + "ms: " + error);
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Outbox.this) {
+                    backingOff.remove(lane);
+                    sending.remove(lane);
+                }
+                sendNext();
+            }
+        }, delay);
+    }
+
+    /**
+     * No response at all, a server-side failure or a route the backend does
+     * not serve yet may succeed later. Any other 4xx means the write itself
+     * was rejected and resending cannot help; the backend reports ordinary
+     * refusals (low bid, closed auction) as a 200 with a status message.
+     */
+    private static boolean isRetryable(VolleyError error) {
+        if (error.networkResponse == null) {
+            return true;
+        }
+        return error.networkResponse.statusCode >= 500 || isMissingRoute(error);
+    }
+
+    private static boolean isMissingRoute(VolleyError error) {
+        if (error.networkResponse == null) {
+            return false;
+        }
+        int status = error.networkResponse.statusCode;
+        return status == 404 || status == 405;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            FileInputStream in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            in.close();
+
+            JSONArray jArray = new JSONArray(new String(data, 0, read, "UTF-8"));
+            for (int i = 0; i < jArray.length(); i++) {
+                entries.add(Entry.fromJson(jArray.getJSONObject(i)));
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites the log through a temp file so a crash mid-write leaves the
+     * previous version intact.
+     */
+    private void save() {
+        try {
+            JSONArray jArray = new JSONArray();
+            for (Entry entry : entries) {
+                jArray.put(entry.toJson());
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            out.write(jArray.toString().getBytes("UTF-8"));
+            out.getFD().sync();
+            out.close();
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "could not replace " + file);
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final String path;
+        final Map<String, String> params;
+        // 404/405 answers so far, see countRetry
+        int missingRoute;
+
+        Entry(String key, String path, Map<String, String> params) {
+            this.key = key;
+            this.path = path;
+            this.params = params;
+        }
+
+        /**
+         * The auction written to: a bid's auction_id or an update's id; null
+         * for a create, which has no id yet.
+         */
+        String auction() {
+            String auction = params.get("auction_id");
+            return auction != null ? auction : params.get("id");
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("key", key);
+            json.put("path", path);
+            json.put("params", new JSONObject(params));
+            json.put("missing_route", missingRoute);
+            return json;
+        }
+
+        static Entry fromJson(JSONObject json) throws JSONException {
+            Map<String, String> params = new HashMap<>();
+            JSONObject jsonParams = json.getJSONObject("params");
+            Iterator<String> names = jsonParams.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                params.put(name, jsonParams.getString(name));
+            }
+            Entry entry = new Entry(json.getString("key"), json.getString("path"), params);
+            entry.missingRoute = json.optInt("missing_route");
+            return entry;
+        }
+    }
+}
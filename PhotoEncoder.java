@@ -0,0 +1,294 @@
+package io.com.didingapp.createbid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.com.didingapp.Volley.ImageRenditions;
+
+/**
+ * Turns picked photos into upload-ready JPEG files, off the main thread.
+ *
+ * A photo is decoded no bigger than needed for {@link #MAX_SIDE} pixels on
+ * its long side (bounds first, then inSampleSize), scaled the rest of the
+ * way, and streamed into a file under the cache directory. Photos are
+ * done one at a time, so at most one decoded photo is in memory, and
+ * afterwards only the file is kept: nothing holds on to encoded bytes.
+ *
+ * Each file comes with the SHA-256 of its bytes, taken as they are
+ * written, which is how the server names stored images, and a dHash of
+ * the picture (see {@link #dHash}), so that the upload can skip photos
+ * the server already has. The thumb and medium renditions of
+ * {@link ImageRenditions} are written from the same decoded bitmap, so
+ * the ladder costs one decode per photo, on the phone, once.
+ */
+final class PhotoEncoder {
+
+    static final int MAX_SIDE = 1280;
+    static final int QUALITY = 80;
+
+    /**
+     * One photo ready for upload.
+     */
+    static final class Encoded {
+        final File file;
+        // of the file's bytes and of the picture, in hex
+        final String sha256;
+        final String phash;
+        // by ImageRenditions name, for those smaller than the photo itself
+        final LinkedHashMap<String, File> renditions;
+
+        Encoded(File file, String sha256, String phash, LinkedHashMap<String, File> renditions) {
+            this.file = file;
+            this.sha256 = sha256;
+            this.phash = phash;
+            this.renditions = renditions;
+        }
+    }
+
+    interface Listener {
+        void onEncoded(int index, Encoded photo);
+
+        void onFailed(int index, Exception e);
+    }
+
+    private static final ExecutorService ENCODE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "photo-encode");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final Context context;
+    private final File dir;
+
+    PhotoEncoder(Context context) {
+        this.context = context.getApplicationContext();
+        this.dir = new File(context.getCacheDir(), "uploads");
+    }
+
+    /**
+     * Encodes the image at uri; the listener hears back on the main thread.
+     */
+    void encode(final int index, final Uri uri, final Listener listener) {
+        ENCODE.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Bitmap bitmap = decode(uri);
+                    try {
+                        write(index, bitmap, listener);
+                    } finally {
+                        bitmap.recycle();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(index, e, listener);
+                }
+            }
+        });
+    }
+
+    /**
+     * Encodes an image already in memory, such as the camera's thumbnail.
+     */
+    void encode(final int index, final Bitmap bitmap, final Listener listener) {
+        ENCODE.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(index, scale(bitmap), listener);
+                } catch (IOException | RuntimeException e) {
+                    fail(index, e, listener);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes files left by an earlier screen that never uploaded them.
+     */
+    void clear() {
+        ENCODE.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = dir.listFiles();
+                for (File file : files != null ? files : new File[0]) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private Bitmap decode(Uri uri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("cannot open " + uri);
+        }
+        BitmapFactory.decodeStream(in, null, options);
+        in.close();
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("not an image: " + uri);
+        }
+
+        int sample = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sample * 2) >= MAX_SIDE) {
+            sample *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("cannot open " + uri);
+        }
+        Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+        in.close();
+        if (bitmap == null) {
+            throw new IOException("cannot decode " + uri);
+        }
+        Bitmap scaled = scale(bitmap);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * bitmap with its long side brought down to MAX_SIDE; smaller ones are
+     * left as they are.
+     */
+    private static Bitmap scale(Bitmap bitmap) {
+        int side = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (side <= MAX_SIDE) {
+            return bitmap;
+        }
+        float factor = (float) MAX_SIDE / side;
+        return Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * factor),
+                Math.round(bitmap.getHeight() * factor), true);
+    }
+
+    private void write(int index, Bitmap bitmap, Listener listener) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        File file = jpeg(bitmap, "photo", sha256);
+
+        LinkedHashMap<String, File> renditions = new LinkedHashMap<>();
+        int side = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        for (int i = 0; i < ImageRenditions.NAMES.length && ImageRenditions.SIDES[i] < side; i++) {
+            float factor = (float) ImageRenditions.SIDES[i] / side;
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * factor),
+                    Math.round(bitmap.getHeight() * factor), true);
+            try {
+                renditions.put(ImageRenditions.NAMES[i], jpeg(scaled, ImageRenditions.NAMES[i], null));
+            } finally {
+                scaled.recycle();
+            }
+        }
+        deliver(index, new Encoded(file, hex(sha256.digest()), dHash(bitmap), renditions), listener);
+    }
+
+    /**
+     * bitmap as a JPEG file, its bytes also going through digest when there is one.
+     */
+    private File jpeg(Bitmap bitmap, String prefix, MessageDigest digest) throws IOException {
+        File file = File.createTempFile(prefix, ".jpg", dir);
+        OutputStream out = new FileOutputStream(file);
+        if (digest != null) {
+            out = new DigestOutputStream(out, digest);
+        }
+        boolean written = false;
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, QUALITY, out)) {
+                throw new IOException("cannot encode " + file);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 64-bit difference hash: bitmap shrunk to 9x8 grey pixels, one bit per
+     * pair of horizontal neighbours, set where the left one is brighter. It
+     * survives re-encoding, rescaling and small edits, so pictures a few
+     * bits apart are the same picture.
+     */
+    static String dHash(Bitmap bitmap) {
+        Bitmap small = Bitmap.createScaledBitmap(bitmap, 9, 8, true);
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            int left = luma(small.getPixel(0, y));
+            for (int x = 1; x < 9; x++) {
+                int right = luma(small.getPixel(x, y));
+                hash = (hash << 1) | (left > right ? 1 : 0);
+                left = right;
+            }
+        }
+        if (small != bitmap) {
+            small.recycle();
+        }
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static int luma(int color) {
+        return (((color >> 16) & 0xff) * 299 + ((color >> 8) & 0xff) * 587 + (color & 0xff) * 114) / 1000;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void deliver(final int index, final Encoded photo, final Listener listener) {
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onEncoded(index, photo);
+            }
+        });
+    }
+
+    private static void fail(final int index, final Exception e, final Listener listener) {
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailed(index, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package io.com.didingapp.Volley;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Admits requests to a {@link RequestQueue} by priority class.
+ *
+ * Each {@link Lane} has its own waiting line and a cap on how many of its
+ * requests may be on the wire at once. Whenever a slot frees up, the
+ * highest lane with work and room goes first, so a bid submitted behind a
+ * backlog of list or image requests is the next thing sent. Inside the
+ * RequestQueue the lane's Volley priority keeps the same order, and the
+ * queue gets one network thread per slot, so an admitted request never
+ * waits for a thread.
+ */
+public class RequestScheduler implements RequestQueue.RequestFinishedListener<Object> {
+
+    /**
+     * Priority classes, highest first, with their concurrency limits.
+     */
+    public enum Lane {
+        BID(Request.Priority.IMMEDIATE, 2),
+        STATUS(Request.Priority.HIGH, 1),
+        LIST(Request.Priority.NORMAL, 3),
+        IMAGE(Request.Priority.LOW, 2);
+
+        public final Request.Priority priority;
+        public final int limit;
+
+        Lane(Request.Priority priority, int limit) {
+            this.priority = priority;
+            this.limit = limit;
+        }
+    }
+
+    private final RequestQueue queue;
+    private final Map<Lane, ArrayDeque<Request<?>>> waiting = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> running = new EnumMap<>(Lane.class);
+    private final Map<Request<?>, Lane> admitted = new IdentityHashMap<>();
+
+    public RequestScheduler(RequestQueue queue) {
+        this.queue = queue;
+        for (Lane lane : Lane.values()) {
+            waiting.put(lane, new ArrayDeque<Request<?>>());
+            running.put(lane, 0);
+        }
+        queue.addRequestFinishedListener(this);
+    }
+
+    /**
+     * Network threads the queue needs so that every lane can fill its slots
+     * at the same time.
+     */
+    public static int threadPoolSize() {
+        int size = 0;
+        for (Lane lane : Lane.values()) {
+            size += lane.limit;
+        }
+        return size;
+    }
+
+    /**
+     * The request should report lane.priority from getPriority(), so the
+     * queue keeps the lane order once it is admitted.
+     */
+    public synchronized void submit(Request<?> request, Lane lane) {
+        ApiMetrics.getInstance().markQueued(request);
+        waiting.get(lane).addLast(request);
+        pump();
+    }
+
+    public synchronized int waiting(Lane lane) {
+        return waiting.get(lane).size();
+    }
+
+    @Override
+    public synchronized void onRequestFinished(Request<Object> request) {
+        Lane lane = admitted.remove(request);
+        if (lane == null) {
+            return;
+        }
+        running.put(lane, running.get(lane) - 1);
+        pump();
+    }
+
+    private void pump() {
+        for (Lane lane : Lane.values()) {
+            ArrayDeque<Request<?>> line = waiting.get(lane);
+            while (!line.isEmpty() && running.get(lane) < lane.limit) {
+                Request<?> request = line.pollFirst();
+                if (request.isCanceled()) {
+                    continue;
+                }
+                running.put(lane, running.get(lane) + 1);
+                admitted.put(request, lane);
+                queue.add(request);
+            }
+        }
+    }
+}
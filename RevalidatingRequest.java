@@ -0,0 +1,85 @@
+package io.com.didingapp.Volley;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.StringRequest;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+/**
+ * GET request whose response is kept in the disk cache together with its
+ * ETag / Last-Modified validators.
+ *
+ * The stored entry is marked expired straight away, so every later call
+ * still goes to the server, but BasicNetwork sends If-None-Match and
+ * If-Modified-Since from the entry and a 304 is answered from disk without
+ * downloading the body again. The backend's Cache-Control is deliberately
+ * ignored: PHP sessions send no-cache by default, which would otherwise
+ * keep Volley from storing anything.
+ */
+public class RevalidatingRequest extends StringRequest {
+
+    private final Priority priority;
+
+    public RevalidatingRequest(String url, Priority priority, final VolleyApi.ResponseListener listener) {
+        super(Request.Method.GET, url,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        listener._onNext(response);
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        listener._onResponseError(error);
+                    }
+                });
+        this.priority = priority;
+        setShouldCache(true);
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected Response<String> parseNetworkResponse(NetworkResponse response) {
+        String parsed;
+        try {
+            parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+        } catch (UnsupportedEncodingException e) {
+            parsed = new String(response.data);
+        }
+        return Response.success(parsed, validatorEntry(response));
+    }
+
+    /**
+     * Cache entry carrying only the validators, or null when the server sent
+     * none and there is nothing to revalidate with.
+     */
+    static Cache.Entry validatorEntry(NetworkResponse response) {
+        Map<String, String> headers = response.headers;
+        String etag = headers.get("ETag");
+        String lastModified = headers.get("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = response.data;
+        entry.etag = etag;
+        entry.serverDate = HttpHeaderParser.parseDateAsEpoch(headers.get("Date"));
+        entry.lastModified = lastModified != null ? HttpHeaderParser.parseDateAsEpoch(lastModified) : 0;
+        entry.softTtl = 0;
+        entry.ttl = 0;
+        entry.responseHeaders = headers;
+        return entry;
+    }
+}
@@ -0,0 +1,197 @@
+package io.com.didingapp.history;
+
+import java.text.DateFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index over a snapshot of the auction list, built once per list
+ * version and then queried on every keystroke.
+ *
+ * Each row gets one normalized text: the lowercased title, the minimum bid
+ * and the start date pre-rendered as the search box used to match it
+ * ("nov04,2019"). Every three-character window of that text is posted
+ * under a hash bucket of its trigram, so a query of three or more
+ * characters only looks at the rows in its rarest bucket, and confirms them
+ * with a plain substring test; that test also weeds out rows that merely
+ * share a bucket. Shorter queries scan the texts directly. A query of the
+ * form "100-500" is a range over the minimum bid instead.
+ */
+final class SearchIndex {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final int BUCKETS = 1 << 16;
+
+    private final historyModel[] rows;
+    private final String[] texts;
+    // rows of bucket b are postings[offsets[b]] up to postings[offsets[b + 1]], in list order
+    private final int[] offsets;
+    private final int[] postings;
+
+    private SearchIndex(historyModel[] rows, String[] texts, int[] offsets, int[] postings) {
+        this.rows = rows;
+        this.texts = texts;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    static SearchIndex build(List<historyModel> models) {
+        String[] months = new DateFormatSymbols().getShortMonths();
+        historyModel[] rows = models.toArray(new historyModel[0]);
+        String[] texts = new String[rows.length];
+        char[] buffer = new char[32];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < rows.length; i++) {
+            historyModel row = rows[i];
+            text.setLength(0);
+            text.append(row.getTitle().toLowerCase(Locale.getDefault())).append(SEPARATOR);
+            if (row.getMinBidText() != null) {
+                text.append(row.getMinBidText().toLowerCase(Locale.getDefault())).append(SEPARATOR);
+            } else {
+                text.append(buffer, 0, AuctionFields.writeAmount(row.getMinBidMinor(), buffer, 0)).append(SEPARATOR);
+            }
+            appendDate(text, row.getStartMillis(), months);
+            texts[i] = text.toString();
+        }
+
+        // counted first, then filled, so the postings are two flat arrays
+        int[] offsets = new int[BUCKETS + 1];
+        int[] last = new int[BUCKETS];
+        Arrays.fill(last, -1);
+        for (int i = 0; i < texts.length; i++) {
+            String t = texts[i];
+            for (int j = 0; j + 3 <= t.length(); j++) {
+                int bucket = bucket(t, j);
+                if (last[bucket] != i) {
+                    last[bucket] = i;
+                    offsets[bucket + 1]++;
+                }
+            }
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] postings = new int[offsets[BUCKETS]];
+        int[] fill = Arrays.copyOf(offsets, BUCKETS);
+        Arrays.fill(last, -1);
+        for (int i = 0; i < texts.length; i++) {
+            String t = texts[i];
+            for (int j = 0; j + 3 <= t.length(); j++) {
+                int bucket = bucket(t, j);
+                if (last[bucket] != i) {
+                    last[bucket] = i;
+                    postings[fill[bucket]++] = i;
+                }
+            }
+        }
+        return new SearchIndex(rows, texts, offsets, postings);
+    }
+
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * Rows matching query, in list order. The query is expected trimmed
+     * and non-empty.
+     */
+    ArrayList<historyModel> query(String query) {
+        String q = query.toLowerCase(Locale.getDefault());
+        ArrayList<historyModel> matches = new ArrayList<>();
+
+        long[] range = bidRange(q);
+        if (range != null) {
+            for (historyModel row : rows) {
+                long bid = row.getMinBidMinor();
+                if (row.getMinBidText() == null && bid >= range[0] && bid <= range[1]) {
+                    matches.add(row);
+                }
+            }
+            return matches;
+        }
+
+        if (q.length() < 3) {
+            for (int i = 0; i < rows.length; i++) {
+                if (texts[i].contains(q)) {
+                    matches.add(rows[i]);
+                }
+            }
+            return matches;
+        }
+
+        // only rows in the bucket of the rarest trigram can contain the query
+        int best = -1;
+        for (int j = 0; j + 3 <= q.length(); j++) {
+            int bucket = bucket(q, j);
+            int size = offsets[bucket + 1] - offsets[bucket];
+            if (size == 0) {
+                return matches;
+            }
+            if (best < 0 || size < offsets[best + 1] - offsets[best]) {
+                best = bucket;
+            }
+        }
+        for (int p = offsets[best]; p < offsets[best + 1]; p++) {
+            int i = postings[p];
+            if (texts[i].contains(q)) {
+                matches.add(rows[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * "100-500" as minor units {10000, 50000}, or null for any other query.
+     */
+    private static long[] bidRange(String q) {
+        int dash = q.indexOf('-');
+        if (dash <= 0 || dash == q.length() - 1) {
+            return null;
+        }
+        String from = q.substring(0, dash).trim();
+        String to = q.substring(dash + 1).trim();
+        if (!isNumber(from) || !isNumber(to)) {
+            return null;
+        }
+        long low = AuctionFields.parseAmount(from);
+        long high = AuctionFields.parseAmount(to);
+        return low <= high ? new long[]{low, high} : new long[]{high, low};
+    }
+
+    private static boolean isNumber(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * "MMM dd, yyyy" with the spaces taken out and lowercased, the form the
+     * start date was matched in before.
+     */
+    private static void appendDate(StringBuilder text, long millis, String[] months) {
+        if (millis == 0) {
+            return;
+        }
+        char[] date = new char[10];
+        AuctionFields.writeDate(millis, date, 0);
+        int month = (date[5] - '0') * 10 + (date[6] - '0');
+        text.append(months[month - 1].toLowerCase(Locale.getDefault()))
+                .append(date, 8, 2)
+                .append(',')
+                .append(date, 0, 4);
+    }
+
+    private static int bucket(String text, int start) {
+        int h = (text.charAt(start) * 31 + text.charAt(start + 1)) * 31 + text.charAt(start + 2);
+        return (h ^ (h >>> 16)) & (BUCKETS - 1);
+    }
+}
@@ -14,6 +14,7 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 
 import io.com.didingapp.R;
+import io.com.didingapp.Volley.ApiClient;
 import io.com.didingapp.Volley.VolleyApi;
 
 public class Selectcategory extends AppCompatActivity implements VolleyApi.ResponseListener {
@@ -42,7 +43,7 @@ public class Selectcategory extends AppCompatActivity implements VolleyApi.Respo
 
     public  void getData(){
         foodModels.clear();
-        VolleyApi.getInstance().category(this,this);
+        ApiClient.getInstance(this).category(this,this);
 
         System.out.println("et dataag");
     }
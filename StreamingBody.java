@@ -0,0 +1,19 @@
+package io.com.didingapp.Volley;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request whose body is written to the connection as it is sent rather
+ * than built up front as one byte array. {@link OkHttpStack} streams it;
+ * other stacks still get the whole body from getBody().
+ */
+public interface StreamingBody {
+
+    /**
+     * Exact length of what {@link #writeBody} writes, or -1 when unknown.
+     */
+    long contentLength();
+
+    void writeBody(OutputStream out) throws IOException;
+}
@@ -0,0 +1,173 @@
+package io.com.didingapp.Volley;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.json.JSONException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link VolleyApi.ResponseListener} bound to a single call.
+ *
+ * Screens used to implement ResponseListener once and switch on a flag to
+ * work out which response just arrived, which meant only one request could
+ * be in flight at a time. Passing a fresh TypedListener to each
+ * VolleyApi call gives every request its own handle, so independent calls
+ * can run side by side and each one gets its response already parsed.
+ *
+ * Parsing runs on a small background pool, off the main thread; onResult
+ * and onFailure are then called back on the main thread. Responses to the
+ * same listener are parsed and delivered in the order they arrived.
+ */
+public abstract class TypedListener<T> implements VolleyApi.ResponseListener {
+
+    /**
+     * Turns the raw response body of one endpoint into its typed result.
+     */
+    public interface Parser<T> {
+        T parse(String obj) throws JSONException;
+    }
+
+    private static final int PARSE_THREADS = 2;
+    private static final ExecutorService PARSE_POOL = Executors.newFixedThreadPool(PARSE_THREADS, new ThreadFactory() {
+        private int count;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "parse-" + ++count);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final Parser<T> parser;
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    private boolean draining;
+    private volatile long lastParseMillis;
+    volatile String metricsEndpoint;
+
+    public TypedListener(Parser<T> parser) {
+        this.parser = parser;
+    }
+
+    public abstract void onResult(T result);
+
+    /**
+     * Called for transport errors and for bodies the parser rejects.
+     */
+    public void onFailure(Throwable e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * How long the most recent response took to parse, for {@link ApiMetrics}.
+     */
+    public long lastParseMillis() {
+        return lastParseMillis;
+    }
+
+    @Override
+    public final void _onNext(final String obj) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                T result = null;
+                JSONException failure = null;
+                try {
+                    result = parser.parse(obj);
+                } catch (JSONException e) {
+                    failure = e;
+                } catch (final RuntimeException e) {
+                    // a parser bug should still crash where it used to, on the main thread
+                    MAIN.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw e;
+                        }
+                    });
+                    return;
+                }
+                lastParseMillis = SystemClock.elapsedRealtime() - start;
+                String endpoint = metricsEndpoint;
+                if (endpoint != null) {
+                    ApiMetrics.getInstance().record(endpoint, ApiMetrics.PARSE, lastParseMillis);
+                }
+                if (failure != null) {
+                    deliverFailure(failure);
+                } else {
+                    deliverResult(result);
+                }
+            }
+        });
+    }
+
+    @Override
+    public final void _onResponseError(final Throwable e) {
+        // queued behind any response still being parsed, so the order holds
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                deliverFailure(e);
+            }
+        });
+    }
+
+    private void deliverResult(final T result) {
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                onResult(result);
+                MainThreadWatchdog.check(TypedListener.this, start);
+            }
+        });
+    }
+
+    private void deliverFailure(final Throwable e) {
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                onFailure(e);
+                MainThreadWatchdog.check(TypedListener.this, start);
+            }
+        });
+    }
+
+    /**
+     * Runs tasks for this listener one at a time on the shared pool.
+     */
+    private synchronized void enqueue(Runnable task) {
+        pending.addLast(task);
+        if (!draining) {
+            draining = true;
+            PARSE_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = pending.pollFirst();
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.com.didingapp.Volley;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One chunk of a resumable upload (see {@link ChunkedUpload}): length bytes
+ * of file from offset, sent raw with their SHA-256 in the
+ * Upload-Chunk-SHA256 header so the server can refuse a damaged chunk. The
+ * slice is read when the request goes out, not when it is queued.
+ */
+class UploadChunkRequest extends Request<String> {
+
+    static final String HASH_HEADER = "Upload-Chunk-SHA256";
+
+    private final File file;
+    private final long offset;
+    private final int length;
+    private final Priority priority;
+    private final VolleyApi.ResponseListener listener;
+    private byte[] slice;
+
+    UploadChunkRequest(String url, File file, long offset, int length, Priority priority,
+                       final VolleyApi.ResponseListener listener) {
+        super(Method.POST, url, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                listener._onResponseError(error);
+            }
+        });
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.priority = priority;
+        this.listener = listener;
+        setShouldCache(false);
+        // a lost chunk is resent by ChunkedUpload, from the offset the server acknowledged
+        setRetryPolicy(new DefaultRetryPolicy(30000, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return "application/octet-stream";
+    }
+
+    @Override
+    public byte[] getBody() {
+        try {
+            return slice();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        try {
+            headers.put(HASH_HEADER, ChunkedUpload.hex(MessageDigest.getInstance("SHA-256").digest(slice())));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // the server refuses the chunk, and it is sent again
+            e.printStackTrace();
+        }
+        return headers;
+    }
+
+    private synchronized byte[] slice() throws IOException {
+        if (slice == null) {
+            byte[] data = new byte[length];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(offset);
+                in.readFully(data);
+            } finally {
+                in.close();
+            }
+            slice = data;
+        }
+        return slice;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected Response<String> parseNetworkResponse(NetworkResponse response) {
+        String parsed;
+        try {
+            parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+        } catch (UnsupportedEncodingException e) {
+            parsed = new String(response.data);
+        }
+        return Response.success(parsed, null);
+    }
+
+    @Override
+    protected void deliverResponse(String response) {
+        listener._onNext(response);
+    }
+}
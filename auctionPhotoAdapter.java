@@ -0,0 +1,59 @@
+package io.com.didingapp.main.Adapter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+
+import io.com.didingapp.ImageLoader;
+import io.com.didingapp.R;
+
+/**
+ * The photos of one auction on its detail screen. A photo is whatever
+ * getAuctionImg answered with, a URL or inline base64; {@link ImageLoader}
+ * takes either and loads it at the cell's size.
+ */
+public class auctionPhotoAdapter extends RecyclerView.Adapter<auctionPhotoAdapter.MyViewHolder> {
+    private ArrayList<String> photos;
+
+    public auctionPhotoAdapter(ArrayList<String> photos) {
+        this.photos = photos;
+    }
+
+    @Override
+    public MyViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_image, parent, false);
+        return new MyViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MyViewHolder myViewHolder, int i) {
+        ImageLoader.setImage(myViewHolder.image, photos.get(i));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull MyViewHolder myViewHolder) {
+        // a photo still loading for a recycled cell is dropped, not decoded
+        ImageLoader.cancel(myViewHolder.image);
+    }
+
+    @Override
+    public int getItemCount() {
+        return photos.size();
+    }
+
+    public class MyViewHolder extends RecyclerView.ViewHolder {
+        private ImageView image;
+
+        public MyViewHolder(View itemView) {
+            super(itemView);
+
+            image = (ImageView) itemView.findViewById(R.id.image_auc);
+        }
+    }
+}
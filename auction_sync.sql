@@ -0,0 +1,12 @@
+--
+-- Delta sync for the upcoming-auction feed
+--
+-- UpcomingBiding with a `since` watermark returns the auctions whose
+-- updated_at is at or after it. MySQL maintains the column on every write,
+-- so status changes (publish/stop) are picked up without touching the PHP
+-- write scripts.
+--
+
+ALTER TABLE `auction_creation`
+  ADD `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  ADD KEY `updated_at` (`updated_at`);
@@ -0,0 +1,169 @@
+"""Back-to-back call latency with and without connection reuse.
+
+Starts standin_server.py over TLS with a throwaway self-signed certificate,
+puts a proxy in front of it that delays all data by half the given round
+trip (a cellular link, roughly), and times pairs of calls made the way
+biding_details makes them: a write followed straight away by a read.
+
+    python3 bench_transport.py [--rtt 100] [--pairs 30]
+
+"fresh" opens a new TCP + TLS connection for every call, which is what each
+call pays without a pool. "pooled" keeps one connection alive for all calls,
+as OkHttpStack's pool does. HTTP/2 is not exercised here: the stand-in is
+HTTP/1.1 only, and for sequential calls the saving comes from reuse either way.
+"""
+
+import argparse
+import asyncio
+import http.client
+import os
+import ssl
+import statistics
+import subprocess
+import sys
+import tempfile
+import threading
+import time
+from urllib.parse import urlencode
+
+HERE = os.path.dirname(os.path.abspath(__file__))
+
+
+def make_cert(directory):
+    cert = os.path.join(directory, "cert.pem")
+    key = os.path.join(directory, "key.pem")
+    subprocess.run(["openssl", "req", "-x509", "-newkey", "rsa:2048", "-nodes", "-days", "1",
+                    "-subj", "/CN=localhost", "-addext", "subjectAltName=DNS:localhost,IP:127.0.0.1",
+                    "-keyout", key, "-out", cert],
+                   check=True, stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    return cert, key
+
+
+def start_server(port, cert, key):
+    server = subprocess.Popen([sys.executable, os.path.join(HERE, "standin_server.py"),
+                               "--port", str(port), "--cert", cert, "--key", key,
+                               "--dump", os.path.join(HERE, "auction_biding-3.sql")],
+                              stdout=subprocess.PIPE, text=True)
+    server.stdout.readline()  # the banner, printed once it is listening
+    return server
+
+
+def start_delay_proxy(listen_port, target_port, one_way_seconds):
+    """Forwards TCP to target_port, holding every chunk back by one_way_seconds."""
+
+    async def pipe(reader, writer):
+        # a delay line, not a per-chunk sleep: every chunk leaves one_way_seconds
+        # after it arrived, however many are in flight
+        loop = asyncio.get_running_loop()
+        queue = asyncio.Queue()
+
+        async def send():
+            while True:
+                due, data = await queue.get()
+                if data is None:
+                    break
+                await asyncio.sleep(max(0, due - loop.time()))
+                writer.write(data)
+                await writer.drain()
+
+        sender = asyncio.ensure_future(send())
+        try:
+            while True:
+                data = await reader.read(65536)
+                await queue.put((loop.time() + one_way_seconds, data or None))
+                if not data:
+                    break
+            await sender
+        except (ConnectionError, asyncio.CancelledError):
+            sender.cancel()
+        finally:
+            writer.close()
+
+    async def handle(client_reader, client_writer):
+        server_reader, server_writer = await asyncio.open_connection("127.0.0.1", target_port)
+        await asyncio.gather(pipe(client_reader, server_writer), pipe(server_reader, client_writer))
+
+    ready = threading.Event()
+
+    def run():
+        loop = asyncio.new_event_loop()
+        asyncio.set_event_loop(loop)
+        loop.run_until_complete(asyncio.start_server(handle, "127.0.0.1", listen_port))
+        ready.set()
+        loop.run_forever()
+
+    threading.Thread(target=run, daemon=True).start()
+    ready.wait()
+
+
+class Client:
+    def __init__(self, port, context, pooled):
+        self.port = port
+        self.context = context
+        self.pooled = pooled
+        self.connection = None
+
+    def call(self, method, path, params):
+        if self.connection is None or not self.pooled:
+            if self.connection is not None:
+                self.connection.close()
+            self.connection = http.client.HTTPSConnection("localhost", self.port, context=self.context)
+        if method == "POST":
+            body = urlencode(params)
+            self.connection.request("POST", "/" + path, body,
+                                    {"Content-Type": "application/x-www-form-urlencoded"})
+        else:
+            self.connection.request("GET", "/" + path + "?" + urlencode(params))
+        response = self.connection.getresponse()
+        response.read()
+        return response.status
+
+    def close(self):
+        if self.connection is not None:
+            self.connection.close()
+
+
+def measure(port, context, pooled, pairs):
+    client = Client(port, context, pooled)
+    # one warm-up call, so "pooled" starts from a live connection as it would in the app
+    client.call("GET", "Auction/upcoming", {"limit": 1})
+    timings = []
+    for i in range(pairs):
+        start = time.perf_counter()
+        client.call("POST", "Biding/insert", {"user_id": "80", "auction_id": "41", "bids": str(400 + i)})
+        client.call("GET", "Auction/upcoming", {"limit": 1})
+        timings.append((time.perf_counter() - start) * 1000)
+    client.close()
+    return timings
+
+
+def report(name, timings):
+    timings = sorted(timings)
+    p90 = timings[int(len(timings) * 0.9) - 1]
+    print("%-7s median %7.1f ms   p90 %7.1f ms   per pair of calls" % (name, statistics.median(timings), p90))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--rtt", type=float, default=100, help="simulated round trip in ms")
+    parser.add_argument("--pairs", type=int, default=30)
+    parser.add_argument("--server-port", type=int, default=8443)
+    parser.add_argument("--proxy-port", type=int, default=8444)
+    args = parser.parse_args()
+
+    with tempfile.TemporaryDirectory() as directory:
+        cert, key = make_cert(directory)
+        server = start_server(args.server_port, cert, key)
+        try:
+            start_delay_proxy(args.proxy_port, args.server_port, args.rtt / 2000)
+            context = ssl.create_default_context(cafile=cert)
+            print("rtt %.0f ms, %d write+read pairs each" % (args.rtt, args.pairs))
+            report("fresh", measure(args.proxy_port, context, False, args.pairs))
+            report("pooled", measure(args.proxy_port, context, True, args.pairs))
+        finally:
+            server.terminate()
+            server.wait()
+
+
+if __name__ == "__main__":
+    main()
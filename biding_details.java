@@ -10,32 +10,39 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.util.ArrayList;
 
 import io.com.didingapp.R;
+import io.com.didingapp.Volley.ApiClient;
+import io.com.didingapp.Volley.ApiMetrics;
+import io.com.didingapp.Volley.ApiParsers;
+import io.com.didingapp.Volley.BidStream;
+import io.com.didingapp.Volley.LoginCheckCache;
+import io.com.didingapp.Volley.Outbox;
 import io.com.didingapp.Volley.Singleton;
+import io.com.didingapp.Volley.TypedListener;
 import io.com.didingapp.Volley.VolleyApi;
-import io.com.didingapp.main.Adapter.aucImgAdapter;
+import io.com.didingapp.history.AuctionFields;
+import io.com.didingapp.history.AuctionStore;
+import io.com.didingapp.main.Adapter.auctionPhotoAdapter;
 import io.com.didingapp.main.Adapter.bidingAdabter;
-import io.com.didingapp.main.model.aucimgModel;
 import io.com.didingapp.main.model.bidingModel;
 
-public class biding_details extends AppCompatActivity implements VolleyApi.ResponseListener {
+public class biding_details extends AppCompatActivity {
 
     TextView title, category, describtion, startdate, enddate, minbid, aucImgtxt, bidhistory;
     String auc_id;
     EditText useramount;
-    ArrayList<aucimgModel> foodModels = new ArrayList<>();
+    ArrayList<String> foodModels = new ArrayList<>();
     ArrayList<bidingModel> bidingModels = new ArrayList<>();
     LinearLayout layot;
     RecyclerView recyclerView, bidngRecycle;
-    int flag, k;
+    int k;
     Button done;
     String history="00";
+    boolean showBids;
+    bidingAdabter bidAdapter;
+    BidStream bidStream;
 
 
     @Override
@@ -121,8 +128,7 @@ public class biding_details extends AppCompatActivity implements VolleyApi.Respo
                         Toast.makeText(biding_details.this, "Please bid a higher amount", Toast.LENGTH_LONG).show();
                     } else {
                         k = Integer.parseInt(Singleton.balance) - Integer.parseInt("1");
-                        flag = 2;
-                        VolleyApi.getInstance().insertBiding(biding_details.this, biding_details.this, Singleton.id, auc_id, useramount.getText().toString());
+                        insertBiding();
                     }
 
 
@@ -135,9 +141,15 @@ public class biding_details extends AppCompatActivity implements VolleyApi.Respo
         bidhistory.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                flag = 0;
-                bidingModels.clear();
-                getBiding();
+                showBids = true;
+                // the live stream keeps bidingModels current; without it the list is refetched
+                if (bidStream == null) {
+                    getBiding();
+                } else if (bidingModels.isEmpty()) {
+                    Toast.makeText(biding_details.this, "No previous biding found", Toast.LENGTH_LONG).show();
+                } else {
+                    showBiding();
+                }
                 System.out.println("ahkjfaf :" + auc_id);
             }
         });
@@ -145,167 +157,225 @@ public class biding_details extends AppCompatActivity implements VolleyApi.Respo
 
     }
 
-    private void getBiding() {
-        VolleyApi.getInstance().getBiding(biding_details.this, this, auc_id);
-    }
-
-
-    public void updateStatus(String status) {
-        flag = 3;
-        VolleyApi.getInstance().updateStatus(biding_details.this, this, auc_id, status);
+    private void getDescription() {
+        ApiClient.getInstance(this).auctionDetail(this, new TypedListener<String>(ApiParsers.AUCTION_DESCRIPTION) {
+            @Override
+            public void onResult(String description) {
+                describtion.setText(description);
+            }
 
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+            }
+        }, auc_id, "description");
     }
 
-    @Override
-    public void onBackPressed() {
-        super.onBackPressed();
-        overridePendingTransition(R.anim.right_in, R.anim.right_out);
+    private void getAuctionImg() {
+        final AuctionStore store = AuctionStore.getInstance(this);
+        final long auctionId = AuctionFields.parseId(auc_id);
+        store.loadImages(auctionId, new AuctionStore.Callback<ArrayList<String>>() {
+            @Override
+            public void onLoaded(ArrayList<String> photos) {
+                // stored photos only stand in until the network's arrive
+                if (foodModels.isEmpty() && !photos.isEmpty()) {
+                    showImages(photos);
+                }
+            }
+        });
+        ApiClient.getInstance(this).getAuctionImg(this, new TypedListener<ArrayList<String>>(ApiParsers.AUCTION_PHOTOS) {
+            @Override
+            public void onResult(ArrayList<String> photos) {
+                store.putImages(auctionId, photos);
+                showImages(photos);
+            }
 
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                if (foodModels.isEmpty()) {
+                    aucImgtxt.setVisibility(View.GONE);
+                }
+            }
+        }, auc_id, "url");
     }
 
-    public void setdata() {
-        int cat = 0;
-        cat = Integer.parseInt(Singleton.historyModel.getCategory());
-        switch (cat) {
-            case 1:
-                category.setText("Electronic");
-                break;
-            case 2:
-                category.setText("Clothes");
-                break;
-        }
-
+    private void showImages(ArrayList<String> photos) {
+        foodModels.clear();
+        foodModels.addAll(photos);
 
-//        foodModels.get(position).getStatus();
-        minbid.setText(Singleton.historyModel.getMin_bids());
-        startdate.setText(Singleton.historyModel.getStart_bid_time());
-        enddate.setText(Singleton.historyModel.getEnd_bid_time());
-        title.setText(Singleton.historyModel.getTitle());
-        describtion.setText(Singleton.historyModel.getDescription());
-        auc_id = Singleton.historyModel.getAuc_id();
-
-        System.out.println("akjflkafkla :" + auc_id);
-        flag = 1;
-        VolleyApi.getInstance().getAuctionImg(this, this, auc_id);
+        auctionPhotoAdapter foodAdapter = new auctionPhotoAdapter(foodModels);
+        recyclerView.setAdapter(foodAdapter);
+    }
 
+    private void getBiding() {
+        VolleyApi.getInstance().getBiding(biding_details.this, ApiMetrics.wrap("getBiding", new TypedListener<ArrayList<bidingModel>>(ApiParsers.BIDS) {
+            @Override
+            public void onResult(ArrayList<bidingModel> result) {
+                bidingModels.clear();
+                bidingModels.addAll(result);
+                if (showBids) {
+                    showBiding();
+                }
+            }
 
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                bidingModels.clear();
+                if (showBids) {
+                    Toast.makeText(biding_details.this, "No previous biding found", Toast.LENGTH_LONG).show();
+                }
+            }
+        }), auc_id);
     }
 
-    @Override
-    public void _onResponseError(Throwable e) {
+    private void showBiding() {
+        if (!bidingModels.isEmpty()) {
+            bidngRecycle.setVisibility(View.VISIBLE);
+        }
+        bidAdapter = new bidingAdabter(this, bidingModels, 1);
+        bidngRecycle.setAdapter(bidAdapter);
+    }
 
+    /**
+     * A bid pushed by the live stream: appended in place instead of
+     * rebuilding the list.
+     */
+    private void addBid(bidingModel bid) {
+        bidingModels.add(bid);
+        if (!showBids) {
+            return;
+        }
+        if (bidAdapter == null) {
+            showBiding();
+            return;
+        }
+        bidngRecycle.setVisibility(View.VISIBLE);
+        bidAdapter.notifyItemInserted(bidingModels.size() - 1);
+        bidngRecycle.scrollToPosition(bidingModels.size() - 1);
     }
 
     @Override
-    public void _onNext(String obj) {
-        if (flag == 1) {
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("data");
-                //int len = jArray.length();
-                for (int i = 0; i < jArray.length(); i++) {
-
-                    JSONObject json_data = jArray.getJSONObject(i);
-
-                    foodModels.add(new aucimgModel(
-                            "" + json_data.getString("auction_id"),
-                            "" + json_data.getString("auction_photo")
-                    ));
-
-                    System.out.println("sfdlkhksdjgkajlg :" + json_data.getString("auction_photo"));
-
+    protected void onResume() {
+        super.onResume();
+        if (!ApiClient.backendRoutes) {
+            return;
+        }
+        if (bidStream == null) {
+            // from the first bid: the stream is the only source of the list
+            bidStream = new BidStream(auc_id, BidStream.FROM_START, new TypedListener<bidingModel>(ApiParsers.BID_EVENT) {
+                @Override
+                public void onResult(bidingModel bid) {
+                    addBid(bid);
                 }
+            });
+        }
+        bidStream.start();
+    }
 
-                aucImgAdapter foodAdapter = new aucImgAdapter(this, foodModels, 1);
-                recyclerView.setAdapter(foodAdapter);
-
+    @Override
+    protected void onPause() {
+        if (bidStream != null) {
+            bidStream.stop();
+        }
+        super.onPause();
+    }
 
-            } catch (
-                    JSONException e) {
-                e.printStackTrace();
-                aucImgtxt.setVisibility(View.GONE);
+    @Override
+    protected void onDestroy() {
+        // a bid still queued is sent anyway, just without calling back here
+        Outbox.getInstance(this).detach(this);
+        super.onDestroy();
+    }
 
+    private void insertBiding() {
+        // the bid is queued durably and retried; a second tap would be a second bid
+        done.setEnabled(false);
+        final String amount = useramount.getText().toString();
+        ApiClient.getInstance(this).insertBiding(biding_details.this, new TypedListener<String>(ApiParsers.MESSAGE) {
+            @Override
+            public void onResult(String msg) {
+                done.setEnabled(true);
+                AuctionStore.getInstance(biding_details.this).putBid(Singleton.id, AuctionFields.parseId(auc_id),
+                        AuctionFields.parseAmount(amount));
+                Toast.makeText(biding_details.this, msg, Toast.LENGTH_LONG).show();
+                VolleyApi.getInstance().balance(biding_details.this, ApiMetrics.wrap("balance", statusListener()), String.valueOf(k));
             }
-        } else if (flag == 2) {
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("msg");
-
-                JSONObject json_data = jArray.getJSONObject(0);
-                String msg = json_data.getString("msg");
-                Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-                flag = 3;
-                VolleyApi.getInstance().balance(biding_details.this, this, String.valueOf(k));
-
 
-            } catch (
-                    JSONException e) {
+            @Override
+            public void onFailure(Throwable e) {
                 e.printStackTrace();
-
+                done.setEnabled(true);
+                Toast.makeText(biding_details.this, "Bid was rejected, please try again", Toast.LENGTH_LONG).show();
             }
+        }, Singleton.id, auc_id, amount);
+    }
 
-        } else if (flag == 3) {
-
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("msg");
-                JSONObject obj2 = jArray.getJSONObject(0);
 
+    public void updateStatus(String status) {
+        VolleyApi.getInstance().updateStatus(biding_details.this, ApiMetrics.wrap("updateStatus", statusListener()), auc_id, status);
 
-                if (obj2.getString("status").equalsIgnoreCase("200")) {
+    }
 
+    private TypedListener<String> statusListener() {
+        return new TypedListener<String>(ApiParsers.STATUS) {
+            @Override
+            public void onResult(String status) {
+                if (status.equalsIgnoreCase("200")) {
+                    LoginCheckCache.getInstance().invalidate(Singleton.mobile);
 
                     onBackPressed();
 
-                    Toast.makeText(this, "Successesfully updated", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(biding_details.this, "Successesfully updated", Toast.LENGTH_SHORT).show();
                 }
-
-
-            } catch (JSONException e) {
-                e.printStackTrace();
-
             }
+        };
+    }
 
-        } else if (flag == 0) {
-
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("data");
-                bidingModels.clear();
-                //int len = jArray.length();
-                for (int i = 0; i < jArray.length(); i++) {
-
-                    JSONObject json_data = jArray.getJSONObject(i);
-
-                    bidingModels.add(new bidingModel(
-                            "" + json_data.getString("auction_id"),
-                            "" + json_data.getString("first_name"),
-                            "" + json_data.getString("bids")
-                    ));
-
-                    bidngRecycle.setVisibility(View.VISIBLE);
-
+    @Override
+    public void onBackPressed() {
+        super.onBackPressed();
+        overridePendingTransition(R.anim.right_in, R.anim.right_out);
 
-                    System.out.println("fgsfgsdf :" + json_data.getString("bids"));
+    }
 
-                }
-//
-                bidingAdabter foodAdapter = new bidingAdabter(this, bidingModels, 1);
-                bidngRecycle.setAdapter(foodAdapter);
+    public void setdata() {
+        int cat = 0;
+        cat = Singleton.historyModel.getCategoryCode();
+        switch (cat) {
+            case 1:
+                category.setText("Electronic");
+                break;
+            case 2:
+                category.setText("Clothes");
+                break;
+        }
 
 
-            } catch (
-                    JSONException e) {
-                e.printStackTrace();
-                Toast.makeText(biding_details.this, "No previous biding found", Toast.LENGTH_LONG).show();
+//        foodModels.get(position).getStatus();
+        minbid.setText(Singleton.historyModel.getMin_bids());
+        startdate.setText(Singleton.historyModel.getStart_bid_time());
+        enddate.setText(Singleton.historyModel.getEnd_bid_time());
+        title.setText(Singleton.historyModel.getTitle());
+        describtion.setText(Singleton.historyModel.getDescription());
+        auc_id = Singleton.historyModel.getAuc_id();
 
-            }
+        System.out.println("akjflkafkla :" + auc_id);
 
+        // images, bid history and a description the list left out are independent, so all go out together;
+        // without the backend routes the list rows are whole and an empty description is just empty
+        String description = Singleton.historyModel.getDescription();
+        if (ApiClient.backendRoutes && (description == null || description.isEmpty())) {
+            getDescription();
+        }
+        getAuctionImg();
+        // the live stream replays the whole bid history itself, so it is not fetched separately
+        if (!ApiClient.backendRoutes) {
+            getBiding();
         }
 
+
     }
+
 }
@@ -0,0 +1,29 @@
+--
+-- Resumable photo uploads
+--
+-- A photo too big to send in one go on a weak connection is uploaded in
+-- chunks. Upload/start opens a session for (auction, SHA-256 of the photo),
+-- or returns the open one with the offset it has reached, so a client that
+-- lost its connection, or was restarted, carries on where it stopped.
+-- Upload/chunk appends bytes only at the session's current offset and only
+-- when they match the chunk's SHA-256 header; the partial file lives next to
+-- the image store. The chunk that reaches the full length is checked against
+-- the photo's hash and moved into the store as an auction_image row. The
+-- session is kept with image_hash set, so a client whose connection dropped
+-- after that last chunk still learns from Upload/status (offset = length,
+-- and the image row) that the photo is stored.
+--
+
+CREATE TABLE `upload_session` (
+  `id` char(32) NOT NULL,
+  `auction_id` varchar(100) NOT NULL,
+  `sha256` char(64) NOT NULL,
+  `length` int(11) NOT NULL,
+  `offset` int(11) NOT NULL DEFAULT 0,
+  `image_hash` char(64) DEFAULT NULL,
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `auction_photo` (`auction_id`, `sha256`),
+  KEY `updated_at` (`updated_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -14,17 +14,23 @@ import android.widget.TextView;
 import android.widget.TimePicker;
 import android.widget.Toast;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+
 import io.com.didingapp.R;
 import io.com.didingapp.Utility;
+import io.com.didingapp.Volley.ApiClient;
+import io.com.didingapp.Volley.ApiParsers;
+import io.com.didingapp.Volley.Outbox;
 import io.com.didingapp.Volley.Singleton;
-import io.com.didingapp.Volley.VolleyApi;
+import io.com.didingapp.Volley.TypedListener;
 import io.com.didingapp.category.Selectcategory;
+import io.com.didingapp.history.AuctionFields;
+import io.com.didingapp.history.AuctionStore;
+import io.com.didingapp.history.historyModel;
 
-public class createBiding extends AppCompatActivity implements DatePickerDialog.OnDateSetListener, View.OnClickListener, VolleyApi.ResponseListener, TimePickerDialog.OnTimeSetListener {
+public class createBiding extends AppCompatActivity implements DatePickerDialog.OnDateSetListener, View.OnClickListener, TimePickerDialog.OnTimeSetListener {
     TextView category, start_date, end_date;
 
     EditText min_bid, describtion, title;
@@ -34,7 +40,6 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
     String time, date, commondate;
      String isEdit="000";
     int flag = 0;
-    int api = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,7 +65,7 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
                 start_date.setText(Singleton.historyModel.getStart_bid_time());
                 end_date.setText(Singleton.historyModel.getEnd_bid_time());
                 int cat = 0;
-                cat = Integer.parseInt(Singleton.historyModel.getCategory());
+                cat = Singleton.historyModel.getCategoryCode();
                 switch (cat) {
                     case 1:
                         category.setText("Electronic");
@@ -82,7 +87,7 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
                 start_date.setText(Singleton.historyModel.getStart_bid_time());
                 end_date.setText(Singleton.historyModel.getEnd_bid_time());
                 int cat = 0;
-                cat = Integer.parseInt(Singleton.historyModel.getCategory());
+                cat = Singleton.historyModel.getCategoryCode();
                 switch (cat) {
                     case 1:
                         category.setText("Electronic");
@@ -142,16 +147,14 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
             Singleton.title = title.getText().toString().trim();
             Singleton.description = describtion.getText().toString().trim();
             Singleton.min_bids = min_bid.getText().toString().trim();
+            setSaving(true);
 //            int k=Integer.parseInt(Singleton.balance)-Integer.parseInt("1");
-//            api=2;
-//            VolleyApi.getInstance().balance(createBiding.this,this,String.valueOf(k));
-
-            api = 0;
+//            VolleyApi.getInstance().balance(createBiding.this,savedListener(),String.valueOf(k));
 
 
                 if (isEdit.equalsIgnoreCase("100")|| isEdit.equalsIgnoreCase("200")) {
 
-                    VolleyApi.getInstance().updateBiding(this, this,Singleton.historyModel.getAuc_id());
+                    ApiClient.getInstance(this).updateBiding(this, savedListener(),Singleton.historyModel.getAuc_id());
 
                 }
 
@@ -159,7 +162,7 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
 
             else {
 
-                VolleyApi.getInstance().actioncreation(this, this);
+                ApiClient.getInstance(this).actioncreation(this, savedListener());
 
             }
 
@@ -170,6 +173,17 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
 
     }
 
+    /**
+     * Saves are queued and retried until they reach the server, so the
+     * buttons stay off meanwhile instead of letting a re-tap create a
+     * second auction.
+     */
+    private void setSaving(boolean saving) {
+        Publish.setEnabled(!saving);
+        draft.setEnabled(!saving);
+        stop.setEnabled(!saving);
+    }
+
     boolean checkValidation1() {
         boolean ret = true;
         if (!Utility.hasText(title)) ret = false;
@@ -204,6 +218,12 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
 
     }
 
+    @Override
+    protected void onDestroy() {
+        Outbox.getInstance(this).detach(this);
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -256,109 +276,65 @@ public class createBiding extends AppCompatActivity implements DatePickerDialog.
         }
     }
 
-    @Override
-    public void _onResponseError(Throwable e) {
-
-    }
-
-    @Override
-    public void _onNext(String obj) {
-
-        if (api == 0) {
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("msg");
-                JSONObject obj2 = jArray.getJSONObject(0);
+    private TypedListener<JSONObject> savedListener() {
+        return new TypedListener<JSONObject>(ApiParsers.SAVED) {
+            @Override
+            public void onResult(JSONObject saved) {
+                if (saved.optString("status").equalsIgnoreCase("200")) {
 
+                    ApiClient.getInstance(createBiding.this).gethistory(createBiding.this, historyListener(saved.optString("id")), Singleton.id, Singleton.status);
 
-                if (obj2.getString("status").equalsIgnoreCase("200")) {
 
-                    api = 1;
-
-                    VolleyApi.getInstance().gethistory(createBiding.this, createBiding.this, Singleton.id,Singleton.status);
-
-
-                    Toast.makeText(this, "Successesfully insert", Toast.LENGTH_SHORT).show();
-
-
-//                    startActivity(new Intent(createBiding.this, imgAuction.class));
+                    Toast.makeText(createBiding.this, "Successesfully insert", Toast.LENGTH_SHORT).show();
+                } else {
+                    setSaving(false);
                 }
+            }
 
-
-//            Toast.makeText(this, obj2.getString("status"), Toast.LENGTH_SHORT).show();
-
-
-            } catch (JSONException e) {
+            @Override
+            public void onFailure(Throwable e) {
                 e.printStackTrace();
-
+                setSaving(false);
+                Toast.makeText(createBiding.this, "something went wrong", Toast.LENGTH_SHORT).show();
             }
-        } else if (api == 1) {
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("data");
-                //int len = jArray.length();
-                for (int i = 0; i < jArray.length(); i++) {
-
-                    JSONObject json_data = jArray.getJSONObject(i);
-
-
-                    Singleton.auc_id = json_data.getString("id");
-
-
-//                        Utility.addPreferences(this, "email", json_data.getString("email"));
-//                        Utility.addPreferences(this, "mobile", json_data.getString("mobile"));
-//                        Utility.addPreferences(this, "first name", json_data.getString("first_name"));
-//                        Utility.addPreferences(this, "last name", json_data.getString("last_name"));
-//                        Utility.addPreferences(this, "img", json_data.getString("photo"));
-//                        Utility.addPreferences(this, "password", json_data.getString("password"));
-//                        Utility.addPreferences(this, "id", json_data.getString("id"));
-//
-
-
-                    System.out.println("lahkjfahjkf :" + Singleton.auc_id);
-
+        };
+    }
 
+    /**
+     * savedId is the auction id the write answered with, "" when the
+     * backend does not send one.
+     */
+    private TypedListener<ArrayList<historyModel>> historyListener(final String savedId) {
+        return new TypedListener<ArrayList<historyModel>>(ApiParsers.AUCTIONS) {
+            @Override
+            public void onResult(ArrayList<historyModel> result) {
+                AuctionStore.getInstance(createBiding.this).putHistory(Singleton.id, AuctionFields.parseCode(Singleton.status), result);
+                if (!savedId.isEmpty()) {
+                    Singleton.auc_id = savedId;
+                } else {
+                    // rows come in end time order, so the newest auction is the one with the highest id
+                    long newest = 0;
+                    for (historyModel model : result) {
+                        newest = Math.max(newest, model.getId());
+                    }
+                    Singleton.auc_id = String.valueOf(newest);
                 }
+                System.out.println("lahkjfahjkf :" + Singleton.auc_id);
 
-                    if(isEdit.equalsIgnoreCase("200")) {
-                        finish();
-                    }
-                else {
+                if (isEdit.equalsIgnoreCase("200")) {
+                    finish();
+                } else {
                     startActivity(new Intent(createBiding.this, imgAuction.class));
                     finish();
                 }
-            } catch (
-                    JSONException e) {
-                e.printStackTrace();
-                Toast.makeText(this, "something went wrong", Toast.LENGTH_SHORT).show();
+            }
 
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                Toast.makeText(createBiding.this, "something went wrong", Toast.LENGTH_SHORT).show();
             }
-        }
-//        else if (api==2) {
-//            try {
-//
-//                JSONObject obj1 = new JSONObject(obj);
-//                JSONArray jArray = obj1.getJSONArray("msg");
-//                JSONObject obj2 = jArray.getJSONObject(0);
-//
-//
-//                if (obj2.getString("status").equalsIgnoreCase("200")) {
-//
-////                    Utility.addPreferences(this, "balance", Singleton.balance);
-//                    api = 0;
-//                    VolleyApi.getInstance().actioncreation(this, this);
-//
-////                    Toast.makeText(this, "Successesfully updated", Toast.LENGTH_SHORT).show();
-//                }
-//
-//
-//            } catch (JSONException e) {
-//                e.printStackTrace();
-//
-//            }
-//        }
+        };
     }
 
     @Override
@@ -1,11 +1,14 @@
 package io.com.didingapp.main.view;
 
 import android.animation.ValueAnimator;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.NavigationView;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.widget.DrawerLayout;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -19,18 +22,29 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import io.com.didingapp.BuildConfig;
+import io.com.didingapp.ImageLoader;
 import io.com.didingapp.LoginActivity;
 import io.com.didingapp.R;
 import io.com.didingapp.Utility;
+import io.com.didingapp.Volley.ApiClient;
+import io.com.didingapp.Volley.ApiMetrics;
+import io.com.didingapp.Volley.ApiParsers;
+import io.com.didingapp.Volley.LoginCheckCache;
+import io.com.didingapp.Volley.Outbox;
 import io.com.didingapp.Volley.Singleton;
+import io.com.didingapp.Volley.TypedListener;
 import io.com.didingapp.Volley.VolleyApi;
 import io.com.didingapp.createbid.createBiding;
+import io.com.didingapp.history.AuctionPager;
+import io.com.didingapp.history.AuctionStore;
 import io.com.didingapp.history.HistoryTab;
 import io.com.didingapp.history.historyAdabter;
 import io.com.didingapp.history.historyModel;
@@ -38,13 +52,16 @@ import io.com.didingapp.paymentActivity;
 import io.com.didingapp.signupActivity;
 
 public class dashBoard extends AppCompatActivity
-        implements NavigationView.OnNavigationItemSelectedListener, VolleyApi.ResponseListener {
-    int flag=0;
+        implements NavigationView.OnNavigationItemSelectedListener {
+    // what the drawer header shows, and the password the edit-profile screen fills in; the OTP stays on the server
+    private static final String[] PROFILE_FIELDS = {"id", "first_name", "last_name", "email", "mobile",
+            "password", "balance", "photo_url"};
     ImageView drw, photo;
     TextView balance, name, email, mobile,no_aution;
     NavigationView navigationView;
     DrawerLayout drawer;
-    ArrayList<historyModel> foodModels = new ArrayList<>();
+    ArrayList<historyModel> foodModels;
+    AuctionPager pager;
     RecyclerView recyclerView;
     RelativeLayout logout;
     ProgressBar progressBar;
@@ -52,6 +69,17 @@ public class dashBoard extends AppCompatActivity
     SearchView upcoming;
     public static historyAdabter foodAdapter;
 
+    // typing pauses shorter than this only restart the wait; the last query is the one searched
+    private static final long SEARCH_DELAY_MILLIS = 150;
+    private final Handler searchHandler = new Handler();
+    private String searchQuery = "";
+    private final Runnable search = new Runnable() {
+        @Override
+        public void run() {
+            foodAdapter.getFilter().filter(searchQuery);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,18 +87,79 @@ public class dashBoard extends AppCompatActivity
         overridePendingTransition(R.anim.left_in, R.anim.left_out);
 
 
-        fetching();
         findviewbyid();
         LinearLayoutManager mLayoutManager = new LinearLayoutManager(getBaseContext());
         recyclerView.setLayoutManager(mLayoutManager);
+        setupPager();
+        fetching();
 
     }
 
+    private void setupPager() {
+        pager = new AuctionPager(new AuctionPager.PageSource() {
+            @Override
+            public void load(String cursor, VolleyApi.ResponseListener listener) {
+                ApiClient.getInstance(dashBoard.this).UpcomingBiding(dashBoard.this, listener, cursor, AuctionPager.PAGE_SIZE,
+                        ApiParsers.AUCTION_ROW_FIELDS);
+            }
+
+            @Override
+            public void loadChanges(String since, VolleyApi.ResponseListener listener) {
+                ApiClient.getInstance(dashBoard.this).UpcomingBidingChanges(dashBoard.this, listener, since,
+                        ApiParsers.AUCTION_ROW_FIELDS);
+            }
+        }, new AuctionPager.Callback() {
+            @Override
+            public void onRefreshed(boolean empty) {
+                progressBar.setVisibility(View.GONE);
+                no_aution.setVisibility(empty ? View.VISIBLE : View.GONE);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                progressBar.setVisibility(View.GONE);
+                if (foodModels.isEmpty()) {
+                    no_aution.setVisibility(View.VISIBLE);
+                }
+            }
+        });
+
+        foodModels = pager.getItems();
+        foodAdapter = new historyAdabter(this,foodModels,1);
+        pager.setAdapter(foodAdapter);
+        // last session's rows go up straight away; the network refresh diffs over them
+        pager.setStore(AuctionStore.getInstance(this));
+        pager.restore();
+        recyclerView.setAdapter(foodAdapter);
+        recyclerView.addOnScrollListener(pager);
+
+        upcoming.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                searchQuery = newText;
+                searchHandler.removeCallbacks(search);
+                if (newText.isEmpty()) {
+                    search.run();
+                } else {
+                    searchHandler.postDelayed(search, SEARCH_DELAY_MILLIS);
+                }
+                return true;
+            }
+        });
+    }
+
     public  void getData(){
-        foodModels.clear();
-        flag=1;
-        progressBar.setVisibility(View.VISIBLE);
-        VolleyApi.getInstance().UpcomingBiding(this,this);
+        if (foodModels.isEmpty()) {
+            progressBar.setVisibility(View.VISIBLE);
+        }
+        pager.sync();
         System.out.println("et dataag");
     }
     @Override
@@ -164,6 +253,7 @@ public class dashBoard extends AppCompatActivity
             case R.id.logout:
 
                 Utility.clearPreferenceData(dashBoard.this);
+                LoginCheckCache.getInstance().invalidateAll();
                 startActivity(new Intent(dashBoard.this, LoginActivity.class));
                 finishAffinity();
                 break;
@@ -171,10 +261,29 @@ public class dashBoard extends AppCompatActivity
     }
 
     private void fetching() {
-        flag=0;
         System.out.println(" >>>>>>>>>>>> :: "+Utility.getPreferences(this,"mobile"));
-        VolleyApi.getInstance().loginCheck(this, this, "" +Utility.getPreferences(this,"mobile"));
+        LoginCheckCache.getInstance().loginCheck(this, new TypedListener<JSONObject>(ApiParsers.LOGIN) {
+            @Override
+            public void onResult(JSONObject result) {
+                if (result == null) {
+                    return;
+                }
+                try {
+                    showProfile(result);
+                } catch (JSONException e) {
+                    onFailure(e);
+                }
+            }
 
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                Toast.makeText(dashBoard.this, "Wrong Mobile No. or Password", Toast.LENGTH_SHORT).show();
+            }
+        }, "" +Utility.getPreferences(this,"mobile"), PROFILE_FIELDS);
+
+        // the auction list does not depend on the profile, so it loads alongside it
+        getData();
     }
 
     public void findviewbyid() {
@@ -186,6 +295,15 @@ public class dashBoard extends AppCompatActivity
 
         drw = findViewById(R.id.drw_menu);
         photo = findViewById(R.id.photo);
+        if (BuildConfig.DEBUG) {
+            photo.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    showMetrics();
+                    return true;
+                }
+            });
+        }
         name = findViewById(R.id.full_name);
         mobile = findViewById(R.id.mob_num);
         email = findViewById(R.id.email);
@@ -200,6 +318,37 @@ public class dashBoard extends AppCompatActivity
 
     }
 
+    /**
+     * Debug builds only: per-endpoint latency and payload numbers, with an
+     * export to api_metrics.json for pulling off the device.
+     */
+    private void showMetrics() {
+        String summary = ApiMetrics.getInstance().summary();
+        new AlertDialog.Builder(this)
+                .setTitle("API metrics")
+                .setMessage(summary.isEmpty() ? "No requests yet" : summary)
+                .setPositiveButton("Export", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        try {
+                            File file = ApiMetrics.getInstance().dump(dashBoard.this);
+                            Toast.makeText(dashBoard.this, "Saved to " + file, Toast.LENGTH_LONG).show();
+                        } catch (IOException | JSONException e) {
+                            e.printStackTrace();
+                            Toast.makeText(dashBoard.this, "Export failed", Toast.LENGTH_LONG).show();
+                        }
+                    }
+                })
+                .setNeutralButton("Reset", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        ApiMetrics.getInstance().reset();
+                    }
+                })
+                .setNegativeButton("Close", null)
+                .show();
+    }
+
     public void valueanim(final TextView view, int text) {
         animator = new ValueAnimator();
         animator.setObjectValues(0, text);
@@ -221,150 +370,67 @@ public class dashBoard extends AppCompatActivity
        }
 
         fetching();
+        Outbox.getInstance(this).flush();
         super.onResume();
 
     }
 
-    @Override
-    public void _onResponseError(Throwable e) {
-
-    }
-
     @Override
     protected void onPause() {
          animator.end();
+        searchHandler.removeCallbacks(search);
 
         super.onPause();
     }
 
-    @Override
-    public void _onNext(String obj) {
-        if(flag ==0){
-            try {
-
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("login");
-                //int len = jArray.length();
-                for (int i = 0; i < jArray.length(); i++) {
-
-                    JSONObject json_data = jArray.getJSONObject(i);
-                    Utility.addPreferences(this, "email", json_data.getString("email"));
-                    Utility.addPreferences(this, "mobile", json_data.getString("mobile"));
-                    Utility.addPreferences(this, "first name", json_data.getString("first_name"));
-                    Utility.addPreferences(this, "last name", json_data.getString("last_name"));
-                    Utility.addPreferences(this, "img", json_data.getString("photo"));
-                    Utility.addPreferences(this, "password", json_data.getString("password"));
-                    Utility.addPreferences(this, "id", json_data.getString("id"));
-                    Utility.addPreferences(this, "balance", json_data.getString("balance"));
-
-                    Utility.addPreferences(this, "login", true);
-
-
-                    Singleton.firstName = Utility.getPreferences(this, "first name");
-                    Singleton.lastname = Utility.getPreferences(this, "last name");
-                    Singleton.email = Utility.getPreferences(this, "email");
-                    Singleton.mobile = Utility.getPreferences(this, "mobile");
-                    Singleton.img = Utility.getPreferences(this, "img");
-                    Singleton.password = Utility.getPreferences(this, "password");
-                    Singleton.id = Utility.getPreferences(this, "id");
-
-                    Singleton.balance = Utility.getPreferences(this,"balance");
-
-
-
-
-                    System.out.println("iaakflaf:"+Singleton.balance);
-
-
-                     String fullname=Singleton.firstName+" "+Singleton.lastname;
-
-                     name.setText(fullname);
-                     email.setText(Singleton.email);
-                     mobile.setText(Singleton.mobile);
-                    Utility.setImage( photo, Singleton.img);
-
-                    valueanim(balance, Integer.parseInt(Singleton.balance));
-
-
-//                    photo.setImageBitmap(Singleton.balance);
-
-
-                    System.out.println("hkjhksjfdgkl :" + Singleton.id);
-
-                    getData();
-
-                }
-
-            } catch (
-                    JSONException e) {
-                e.printStackTrace();
-                Toast.makeText(this, "Wrong Mobile No. or Password", Toast.LENGTH_SHORT).show();
-
-            }
-        }else if(flag==1){
-
-            try {
-                JSONObject obj1 = new JSONObject(obj);
-                JSONArray jArray = obj1.getJSONArray("data");
-                String status="";
-                //int len = jArray.length();
-                for (int i = 0; i < jArray.length(); i++) {
-
-                    JSONObject json_data = jArray.getJSONObject(i);
-
-                    foodModels.add(new historyModel(
-                            ""+json_data.getString("title"),
-                            ""+json_data.getString("min_bids"),
-                            ""+json_data.getString("start_bid_time"),
-                            ""+json_data.getString("end_bid_time"),
-                            ""+json_data.getString("status"),
-                            ""+json_data.getString("cat_id"),
-                            ""+json_data.getString("description"),
-                            ""+json_data.getString("id")
-
-                    ));
-
-
-
+    private void showProfile(JSONObject json_data) throws JSONException {
+        Utility.addPreferences(this, "email", json_data.getString("email"));
+        Utility.addPreferences(this, "mobile", json_data.getString("mobile"));
+        Utility.addPreferences(this, "first name", json_data.getString("first_name"));
+        Utility.addPreferences(this, "last name", json_data.getString("last_name"));
+        // the photo by URL, fetched once into the image cache rather than inline with every check;
+        // VolleyApi's loginCheck has no photo_url and still sends the photo inline
+        String img;
+        if (!json_data.has("photo_url")) {
+            img = json_data.getString("photo");
+        } else {
+            img = json_data.isNull("photo_url") ? "" : ApiClient.imageUrl(json_data.getString("photo_url"));
+        }
+        Utility.addPreferences(this, "img", img);
+        Utility.addPreferences(this, "password", json_data.getString("password"));
+        Utility.addPreferences(this, "id", json_data.getString("id"));
+        Utility.addPreferences(this, "balance", json_data.getString("balance"));
 
-                    System.out.println("sfdlkhksdjgkajlg :"+json_data.getString("title"));
+        Utility.addPreferences(this, "login", true);
 
 
-                }
-                progressBar.setVisibility(View.GONE);
-                no_aution.setVisibility(View.GONE);
+        Singleton.firstName = Utility.getPreferences(this, "first name");
+        Singleton.lastname = Utility.getPreferences(this, "last name");
+        Singleton.email = Utility.getPreferences(this, "email");
+        Singleton.mobile = Utility.getPreferences(this, "mobile");
+        Singleton.img = Utility.getPreferences(this, "img");
+        Singleton.password = Utility.getPreferences(this, "password");
+        Singleton.id = Utility.getPreferences(this, "id");
 
+        Singleton.balance = Utility.getPreferences(this,"balance");
 
-                foodAdapter = new historyAdabter(this,foodModels,1);
-                recyclerView.setAdapter(foodAdapter);
 
-                upcoming.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
 
-                    @Override
-                    public boolean onQueryTextSubmit(String query) {
-                        return false;
-                    }
 
-                    @Override
-                    public boolean onQueryTextChange(String newText) {
-                        foodAdapter.getFilter().filter(newText);
-                        return true;
-                    }
-                });
+        System.out.println("iaakflaf:"+Singleton.balance);
 
 
-            } catch (
-                    JSONException e) {
-                e.printStackTrace();
-                progressBar.setVisibility(View.GONE);
-                no_aution.setVisibility(View.VISIBLE);
+        String fullname=Singleton.firstName+" "+Singleton.lastname;
 
-            }
-        }
+        name.setText(fullname);
+        email.setText(Singleton.email);
+        mobile.setText(Singleton.mobile);
+        ImageLoader.setImage(photo, Singleton.img);
 
+        valueanim(balance, Integer.parseInt(Singleton.balance));
 
 
+        System.out.println("hkjhksjfdgkl :" + Singleton.id);
     }
 
-
 }
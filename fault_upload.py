@@ -0,0 +1,271 @@
+"""Resumable photo upload against a connection that keeps dying.
+
+Starts standin_server.py, puts a proxy in front of it that cuts every
+connection after a random number of bytes (mid-chunk, most of the time, and
+now and then just after a chunk went through but before its answer came
+back), and uploads one large photo the way ChunkedUpload does it:
+Upload/start, then Upload/chunk from the acknowledged offset, halving the
+chunk after a failure and asking Upload/status where to carry on.
+
+    python3 fault_upload.py [--size 3000000] [--cut 400000] [--seed 1]
+
+Halfway through, the client also forgets its session and calls Upload/start
+again, as the app does after a restart, and sends one chunk with a byte
+flipped. The run fails (exit status 1) unless the upload resumes each time
+from the offset the server had acknowledged, the damaged chunk is refused,
+the photo the server then serves is byte for byte the one sent, the
+bytes resent because of the cuts stay within one chunk per cut, and the
+finished session still answers Upload/status with the stored photo, for a
+client that lost the answer to its last chunk.
+"""
+
+import argparse
+import asyncio
+import hashlib
+import http.client
+import json
+import os
+import random
+import struct
+import subprocess
+import sys
+import tempfile
+import threading
+import time
+from urllib.parse import urlencode
+
+HERE = os.path.dirname(os.path.abspath(__file__))
+
+# the client's chunk sizes, as in ChunkedUpload
+MIN_CHUNK = 64 * 1024
+FIRST_CHUNK = 256 * 1024
+MAX_CHUNK = 1024 * 1024
+
+
+def start_server(port, images):
+    server = subprocess.Popen([sys.executable, os.path.join(HERE, "standin_server.py"),
+                               "--port", str(port), "--images", images,
+                               "--dump", os.path.join(HERE, "auction_biding-3.sql")],
+                              stdout=subprocess.PIPE, text=True)
+    server.stdout.readline()  # the banner, printed once it is listening
+    return server
+
+
+def start_cutting_proxy(listen_port, target_port, cut, rng, cuts):
+    """Forwards TCP to target_port and drops each connection after about cut bytes.
+
+    Every connection gets an upload budget between cut/2 and 3*cut/2; a
+    third of them also lose the response after its first few bytes. cuts
+    counts the connections dropped.
+    """
+
+    async def pipe(reader, writer, budget, other):
+        try:
+            while True:
+                data = await reader.read(65536)
+                if not data:
+                    break
+                if budget is not None and len(data) >= budget:
+                    writer.write(data[:budget])
+                    await writer.drain()
+                    cuts.append(1)
+                    other.close()
+                    break
+                if budget is not None:
+                    budget -= len(data)
+                writer.write(data)
+                await writer.drain()
+        except (ConnectionError, asyncio.CancelledError):
+            pass
+        finally:
+            writer.close()
+
+    async def handle(client_reader, client_writer):
+        server_reader, server_writer = await asyncio.open_connection("127.0.0.1", target_port)
+        up = rng.randint(cut // 2, cut * 3 // 2)
+        down = rng.randint(0, 200) if rng.random() < 1 / 3 else None
+        await asyncio.gather(pipe(client_reader, server_writer, up, client_writer),
+                             pipe(server_reader, client_writer, down, server_writer))
+
+    ready = threading.Event()
+
+    def run():
+        loop = asyncio.new_event_loop()
+        asyncio.set_event_loop(loop)
+        loop.run_until_complete(asyncio.start_server(handle, "127.0.0.1", listen_port))
+        ready.set()
+        loop.run_forever()
+
+    threading.Thread(target=run, daemon=True).start()
+    ready.wait()
+
+
+def make_photo(size, rng):
+    """size bytes that the server takes for a JPEG: a frame header, then noise."""
+    header = b"\xff\xd8" + b"\xff\xc0" + struct.pack(">HBHHB", 17, 8, 1200, 1600, 3) + bytes(9)
+    return header + rng.randbytes(size - len(header) - 2) + b"\xff\xd9"
+
+
+class Client:
+    """The upload state machine of ChunkedUpload, over a connection that may die at any time."""
+
+    def __init__(self, port):
+        self.port = port
+        self.connection = None
+        self.sent = 0
+        self.failures = 0
+
+    def call(self, method, path, body=None, headers=None):
+        """The decoded JSON response, or None if the connection died first."""
+        if self.connection is None:
+            self.connection = http.client.HTTPConnection("127.0.0.1", self.port, timeout=10)
+        try:
+            self.connection.request(method, "/" + path, body, headers or {})
+            response = self.connection.getresponse()
+            return json.loads(response.read())
+        except (OSError, http.client.HTTPException, ValueError):
+            self.connection.close()
+            self.connection = None
+            self.failures += 1
+            return None
+
+    def start(self, auction_id, sha256, length):
+        while True:
+            body = urlencode({"auction_id": auction_id, "sha256": sha256, "length": length})
+            answer = self.call("POST", "Upload/start", body, {"Content-Type": "application/x-www-form-urlencoded"})
+            if answer is not None:
+                check(answer["msg"][0]["status"] == "200", "Upload/start: %s" % answer)
+                return answer["upload"]["id"], int(answer["upload"]["offset"])
+            time.sleep(0.02)
+
+    def status(self, upload_id):
+        """(offset, image row or None): the row once the photo is stored."""
+        while True:
+            answer = self.call("GET", "Upload/status?" + urlencode({"id": upload_id}))
+            if answer is not None:
+                check(answer["msg"][0]["status"] == "200", "Upload/status: %s" % answer)
+                return int(answer["upload"]["offset"]), (answer.get("data") or [None])[0]
+            time.sleep(0.02)
+
+    def chunk(self, upload_id, offset, data, damage=False):
+        digest = hashlib.sha256(data).hexdigest()
+        if damage:
+            data = bytes([data[0] ^ 0xFF]) + data[1:]
+        self.sent += len(data)
+        return self.call("POST", "Upload/chunk?" + urlencode({"id": upload_id, "offset": offset}), data,
+                         {"Content-Type": "application/octet-stream", "Upload-Chunk-SHA256": digest})
+
+
+
+def fetch(port, path):
+    """GET straight from the server, past the proxy."""
+    connection = http.client.HTTPConnection("127.0.0.1", port, timeout=10)
+    connection.request("GET", "/" + path)
+    response = connection.getresponse()
+    return response.status, response.read()
+
+
+def check(condition, message):
+    if not condition:
+        print("FAIL: " + message)
+        sys.exit(1)
+
+
+def upload(client, photo, auction_id):
+    """Runs one photo to completion; returns (image row, what happened on the way)."""
+    sha256 = hashlib.sha256(photo).hexdigest()
+    upload_id, offset = client.start(auction_id, sha256, len(photo))
+    check(offset == 0, "a new photo starts at 0, not %d" % offset)
+    events = {"resumed": 0, "restarted": False, "refused": False, "lost_last": False}
+    size = FIRST_CHUNK
+    acked = 0
+    while True:
+        if not events["restarted"] and acked >= len(photo) // 2:
+            # the app was killed: all it has is the photo, and the server the session
+            events["restarted"] = True
+            upload_id, offset = client.start(auction_id, sha256, len(photo))
+            check(offset == acked, "restart resumed at %d, %d acknowledged" % (offset, acked))
+        damage = events["restarted"] and not events["refused"]
+        data = photo[offset:offset + size]
+        answer = client.chunk(upload_id, offset, data, damage)
+        if answer is None:
+            # the connection died somewhere: back to what the server has
+            size = max(size // 2, MIN_CHUNK)
+            time.sleep(0.02)
+            offset, image = client.status(upload_id)
+            check(offset >= acked, "offset went back from %d to %d" % (acked, offset))
+            check(offset in (acked, acked + len(data)), "offset %d is no chunk boundary" % offset)
+            acked = offset
+            events["resumed"] += 1
+            if image is not None:
+                # the last chunk went through and only its answer was lost
+                check(offset == len(photo), "completed at %d of %d" % (offset, len(photo)))
+                events["lost_last"] = True
+                return image, events
+            continue
+        status = answer["msg"][0]["status"]
+        if damage:
+            check(status == "422" and int(answer["upload"]["offset"]) == offset,
+                  "damaged chunk was not refused: %s" % answer)
+            events["refused"] = True
+            continue
+        if status == "409":
+            # the previous chunk went through but its answer was lost
+            offset = acked = int(answer["upload"]["offset"])
+            continue
+        check(status == "200", "Upload/chunk: %s" % answer)
+        offset = acked = int(answer["upload"]["offset"])
+        size = min(size * 2, MAX_CHUNK)
+        if "data" in answer:
+            check(offset == len(photo), "completed at %d of %d" % (offset, len(photo)))
+            return answer["data"][0], events
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--size", type=int, default=3000000, help="photo size in bytes")
+    parser.add_argument("--cut", type=int, default=400000, help="mean bytes a connection carries")
+    parser.add_argument("--seed", type=int, default=1)
+    parser.add_argument("--server-port", type=int, default=8765)
+    parser.add_argument("--proxy-port", type=int, default=8766)
+    args = parser.parse_args()
+
+    rng = random.Random(args.seed)
+    photo = make_photo(args.size, rng)
+    cuts = []
+    with tempfile.TemporaryDirectory() as images:
+        server = start_server(args.server_port, images)
+        try:
+            start_cutting_proxy(args.proxy_port, args.server_port, args.cut, rng, cuts)
+            client = Client(args.proxy_port)
+            start = time.perf_counter()
+            image, events = upload(client, photo, "41")
+            elapsed = time.perf_counter() - start
+
+            status, served = fetch(args.server_port, image["url"])
+            check(status == 200, "GET %s: %d" % (image["url"], status))
+            check(served == photo, "served photo differs from the one uploaded")
+            check(not os.listdir(os.path.join(images, "partial")), "partial file left behind")
+
+            # a client that lost the last answer asks again and is told the photo is stored
+            direct = Client(args.server_port)
+            upload_id, offset = direct.start("41", hashlib.sha256(photo).hexdigest(), len(photo))
+            check(offset == len(photo), "completed session reopened at %d" % offset)
+            offset, row = direct.status(upload_id)
+            check(offset == len(photo) and row is not None and row["url"] == image["url"],
+                  "Upload/status of the completed session: %d, %s" % (offset, row))
+            resent = client.sent - len(photo)
+            # each failure costs at most the chunk in flight, plus the one damaged on purpose
+            check(resent <= (client.failures + 1) * MAX_CHUNK, "resent %d bytes for %d failures"
+                  % (resent, client.failures))
+        finally:
+            server.terminate()
+            server.wait()
+
+    print("%d bytes in %.1f s: %d connections cut, %d resumes, %d bytes resent (%.0f%%)"
+          % (len(photo), elapsed, len(cuts), events["resumed"], resent, 100.0 * resent / len(photo)))
+    print("restart resumed at the acknowledged offset, damaged chunk refused, served bytes match")
+
+
+if __name__ == "__main__":
+    main()
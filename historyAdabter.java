@@ -3,6 +3,8 @@ package io.com.didingapp.history;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -13,30 +15,63 @@ import android.widget.Filterable;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import io.com.didingapp.R;
-import io.com.didingapp.Utility;
 import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.createbid.createBiding;
 import io.com.didingapp.main.view.biding_details;
 
+/**
+ * Auction rows for the dashboard and history lists.
+ *
+ * The adapter only ever holds immutable snapshots. {@link #submitList}
+ * and search results are compared with the rows on screen on a background
+ * thread (see {@link AuctionDiff}), and only the resulting inserts,
+ * removes, moves and changes are dispatched, so a refresh costs work in
+ * proportion to what changed and keeps the scroll position.
+ */
 public class historyAdabter extends RecyclerView.Adapter<historyAdabter.MyViewHolder> implements Filterable {
-    private ArrayList<historyModel> paths;
-    private ArrayList<historyModel> pathsitem;
+    private static final Executor DIFF_THREAD = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "list-diff");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    // rows on screen, and the latest full list they are a search of (or equal to)
+    private List<historyModel> paths;
+    private volatile List<historyModel> pathsitem;
+    private boolean filtered;
+    private int generation;
     private Context mContext;
     private LayoutInflater inflater;
 
     private Activity context;
-    String price;
     int pathh;
 
+    private static final String PRICE = "Price : ";
+    private static final String START_DATE = "Start date : ";
+    private static final String END_DATE = "End date : ";
+
+    // one filter, so a new query drops the ones still waiting for the filter thread
+    private final Filter searchFilter = new SearchFilter();
+    private List<historyModel> indexed;
+    private SearchIndex index;
 
     int flag;
 
 
     public historyAdabter(Activity context, ArrayList<historyModel> paths, int flag) {
-        this.paths = paths;
-        this.pathsitem = paths;
+        this.pathsitem = snapshot(paths);
+        this.paths = this.pathsitem;
         this.context = context;
         inflater = LayoutInflater.from(context);
         this.flag = flag;
@@ -57,99 +92,63 @@ public class historyAdabter extends RecyclerView.Adapter<historyAdabter.MyViewHo
 
         final historyModel foodModel = paths.get(i);
 
-        //Toast.makeText(context, "hello", Toast.LENGTH_SHORT).show();
-
-        if (flag==4){
-             price = "Price : " + foodModel.getMybids();
-
-             myViewHolder.status.setVisibility(View.GONE);
+        // texts are written into the holder's buffers: nothing is parsed or allocated per bind
+        bindPrice(myViewHolder, foodModel);
 
-        }else {
-             price = "Price : " + foodModel.getMin_bids();
-            switch (Integer.parseInt(foodModel.getStatus())) {
+        char[] buffer = myViewHolder.startText;
+        int length = AuctionFields.write(START_DATE, buffer, 0);
+        length = AuctionFields.writeDate(foodModel.getStartMillis(), buffer, length);
+        myViewHolder.startdate.setText(buffer, 0, length);
 
-                case 1:
-                    myViewHolder.status.setText("Draft");
-                    myViewHolder.status.setBackgroundResource(R.color.colorAccent);
+        buffer = myViewHolder.endText;
+        length = AuctionFields.write(END_DATE, buffer, 0);
+        length = AuctionFields.writeDate(foodModel.getEndMillis(), buffer, length);
+        myViewHolder.enddate.setText(buffer, 0, length);
 
-                    break;
-                case 2:
-                    myViewHolder.status.setText("Publish");
-                    myViewHolder.status.setBackgroundResource(R.color.green);
+        myViewHolder.title.setText(foodModel.getTitle());
 
-                    break;
-                case 3:
-                    myViewHolder.status.setText("stop");
-                    myViewHolder.status.setBackgroundResource(R.color.red);
+        bindStatus(myViewHolder, foodModel);
 
-                    break;
 
+    }
 
-            }
+    @Override
+    public void onBindViewHolder(@NonNull MyViewHolder myViewHolder, int i, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(myViewHolder, i);
+            return;
         }
-
-
-        String startdate = "", Enddate = "";
-        if (foodModel.getStart_bid_time().length() == 19) {
-            startdate = "Start date : " + foodModel.getStart_bid_time().subSequence(0, 11);
-
-        } else {
-            startdate = "Start date : " + foodModel.getStart_bid_time();
-
+        int changed = 0;
+        for (Object payload : payloads) {
+            changed |= (Integer) payload;
         }
-        if (foodModel.getEnd_bid_time().length() == 19) {
-            Enddate = "End date : " + foodModel.getEnd_bid_time().subSequence(0, 11);
-
-        } else {
-            Enddate = "End date : " + foodModel.getEnd_bid_time();
-
+        historyModel foodModel = paths.get(i);
+        if ((changed & AuctionDiff.PRICE) != 0) {
+            bindPrice(myViewHolder, foodModel);
         }
-        //System.out.println("diaiiaiaiaiia :" + foodModel.getEnd_bid_time().subSequence(0, 11));
-
-        if(flag==4){
-            myViewHolder.price.setText(foodModel.getMybids());
+        if ((changed & AuctionDiff.STATUS) != 0) {
+            bindStatus(myViewHolder, foodModel);
         }
-        myViewHolder.title.setText(foodModel.getTitle());
-        myViewHolder.price.setText(price);
-        myViewHolder.startdate.setText(startdate);
-        myViewHolder.enddate.setText(Enddate);
-
-
-        myViewHolder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-
-                Singleton.historyModel = null;
-
-                Singleton.historyModel = foodModel;
-                if (flag == 1) {
-                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class));
-
-                }else if(flag==2){
-                    view.getContext().startActivity(new Intent(view.getContext(), createBiding.class).putExtra("isEdit", "200"));
-
-//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "2"));
-
-                }else if(flag==3){
-                    view.getContext().startActivity(new Intent(view.getContext(), createBiding.class).putExtra("isEdit", "100"));
-
-//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "3"));
-
-                }else if(flag==5){
-//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "5"));
-                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "4"));
-
-                }else if (flag==4){
-
-                }
-
-            }
-        });
-
-
+    }
 
+    private void bindPrice(MyViewHolder myViewHolder, historyModel foodModel) {
+        char[] buffer = myViewHolder.priceText;
+        int length = AuctionFields.write(PRICE, buffer, 0);
+        if (flag==4){
+            length = AuctionFields.writeAmount(foodModel.getMyBidMinor(), buffer, length);
+            myViewHolder.status.setVisibility(View.GONE);
+        }else if (foodModel.getMinBidText() != null) {
+            // not an amount, and of any length: shown as the backend has it
+            myViewHolder.price.setText(PRICE + foodModel.getMinBidText());
+            return;
+        }else {
+            length = AuctionFields.writeAmount(foodModel.getMinBidMinor(), buffer, length);
+        }
+        myViewHolder.price.setText(buffer, 0, length);
+    }
 
-        switch (Integer.parseInt(foodModel.getStatus())) {
+    private void bindStatus(MyViewHolder myViewHolder, historyModel foodModel) {
+        switch (foodModel.getStatusCode()) {
 
             case 1:
                 myViewHolder.status.setText("Draft");
@@ -169,63 +168,155 @@ public class historyAdabter extends RecyclerView.Adapter<historyAdabter.MyViewHo
 
 
         }
+    }
 
+    private void open(View view, historyModel foodModel) {
 
-    }
+        Singleton.historyModel = null;
 
+        Singleton.historyModel = foodModel;
+        if (flag == 1) {
+            view.getContext().startActivity(new Intent(view.getContext(), biding_details.class));
 
-    @Override
-    public int getItemCount() {
+        }else if(flag==2){
+            view.getContext().startActivity(new Intent(view.getContext(), createBiding.class).putExtra("isEdit", "200"));
 
-        return paths.size();
+//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "2"));
+
+        }else if(flag==3){
+            view.getContext().startActivity(new Intent(view.getContext(), createBiding.class).putExtra("isEdit", "100"));
+
+//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "3"));
+
+        }else if(flag==5){
+//                    view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "5"));
+            view.getContext().startActivity(new Intent(view.getContext(), biding_details.class).putExtra("history", "4"));
+
+        }else if (flag==4){
+
+        }
 
     }
 
+
     @Override
-    public Filter getFilter() {
-        return new Filter() {
+    public int getItemCount() {
 
-            @Override
-            protected FilterResults performFiltering(CharSequence charSequence) {
-                String query = charSequence.toString();
+        return paths.size();
 
-                if (query.isEmpty()) {
-                    paths = pathsitem;
-                } else {
+    }
 
-                    ArrayList<historyModel> filteredList = new ArrayList<>();
+    /**
+     * True while a search query narrows the rows shown to a subset of the list.
+     */
+    public boolean isFiltered() {
+        return filtered;
+    }
 
-                    for (historyModel upcomingGuestData : pathsitem ) {
+    /**
+     * Replaces the list with a copy of items. While a search is showing, the
+     * copy is what the next query (or clearing it) searches.
+     */
+    public void submitList(List<historyModel> items) {
+        pathsitem = snapshot(items);
+        if (!filtered) {
+            show(pathsitem);
+        }
+    }
 
-                        System.out.println("ajhfjkhajhkjh :"+upcomingGuestData.getMin_bids()+upcomingGuestData.getTitle()+upcomingGuestData.getStart_bid_time());
+    private static List<historyModel> snapshot(List<historyModel> items) {
+        return Collections.unmodifiableList(new ArrayList<>(items));
+    }
 
-                        if (upcomingGuestData.getTitle().toLowerCase().contains(query) || upcomingGuestData.getMin_bids().toLowerCase().contains(query) || Utility.formatDateForDisplay(upcomingGuestData.getStart_bid_time(),"yyyy-MM-dd",""+"MMM dd, yyyy" ).replace(" ", "").toLowerCase().contains(query)) {
-                            filteredList.add(upcomingGuestData);
+    /**
+     * Moves the rows on screen to next, diffing off the main thread; a later
+     * call supersedes one whose diff has not been applied yet.
+     */
+    private void show(final List<historyModel> next) {
+        final int requested = ++generation;
+        final List<historyModel> old = paths;
+        if (old.isEmpty() || next.isEmpty()) {
+            paths = next;
+            if (!old.isEmpty()) {
+                notifyItemRangeRemoved(0, old.size());
+            } else if (!next.isEmpty()) {
+                notifyItemRangeInserted(0, next.size());
+            }
+            return;
+        }
+        final List<historyModel> base = pathsitem;
+        DIFF_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                final AuctionDiff.Result result = AuctionDiff.calculate(base, old, next);
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requested != generation) {
+                            return;
                         }
+                        paths = next;
+                        result.dispatchUpdatesTo(historyAdabter.this);
                     }
-                    paths = filteredList;
-                }
-                FilterResults filterResults = new FilterResults();
-                filterResults.values = paths;
-                return filterResults;
+                });
             }
+        });
+    }
 
-            @Override
-            protected void publishResults(CharSequence charSequence, FilterResults filterResults) {
-                paths = (ArrayList<historyModel>) filterResults.values;
-                notifyDataSetChanged();
+    @Override
+    public Filter getFilter() {
+        return searchFilter;
+    }
+
+    private class SearchFilter extends Filter {
 
+        @Override
+        protected FilterResults performFiltering(CharSequence charSequence) {
+            FilterResults filterResults = new FilterResults();
+            String query = charSequence == null ? "" : charSequence.toString().trim();
+            // an immutable snapshot, so reading it here needs no copy
+            List<historyModel> items = pathsitem;
+            if (query.isEmpty()) {
+                return filterResults;
+            }
+            if (indexed != items) {
+                index = SearchIndex.build(items);
+                indexed = items;
             }
-        };
+            List<historyModel> filteredList = Collections.unmodifiableList(index.query(query));
+            filterResults.values = filteredList;
+            filterResults.count = filteredList.size();
+            return filterResults;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence charSequence, FilterResults filterResults) {
+            filtered = filterResults.values != null;
+            show(filtered ? (List<historyModel>) filterResults.values : pathsitem);
+        }
     }
 
     public class MyViewHolder extends RecyclerView.ViewHolder {
         private TextView title, price, startdate, enddate, status;
+        private final char[] priceText = new char[40];
+        private final char[] startText = new char[32];
+        private final char[] endText = new char[32];
 
 
         public MyViewHolder(View itemView) {
             super(itemView);
 
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        open(view, paths.get(position));
+                    }
+                }
+            });
+
             title = (TextView) itemView.findViewById(R.id.title_his);
             price = (TextView) itemView.findViewById(R.id.price);
             startdate = (TextView) itemView.findViewById(R.id.startdate);
@@ -1,5 +1,11 @@
 package io.com.didingapp.history;
 
+/**
+ * One auction row. Ids, codes, times and amounts are decoded once when the
+ * row is parsed (see {@link AuctionFields}) and kept as primitives, so list
+ * binding and sorting never re-parse strings. The String getters format on
+ * demand for the detail and edit screens.
+ */
 public class historyModel {
 
 
@@ -7,9 +13,9 @@ public class historyModel {
     public String toString() {
         return "historyModel{" +
                 "title='" + title + '\'' +
-                ", min_bids='" + min_bids + '\'' +
-                ", start_bid_time='" + start_bid_time + '\'' +
-                ", end_bid_time='" + end_bid_time + '\'' +
+                ", min_bids='" + getMin_bids() + '\'' +
+                ", start_bid_time='" + getStart_bid_time() + '\'' +
+                ", end_bid_time='" + getEnd_bid_time() + '\'' +
                 ", auc_id='" + auc_id + '\'' +
                 ", status='" + status + '\'' +
                 ", category='" + category + '\'' +
@@ -18,113 +24,127 @@ public class historyModel {
     }
 
     public historyModel(String mybids, String title, String min_bids, String start_bid_time, String end_bid_time, String status, String description) {
-        this.mybids = mybids;
+        this.mybids = AuctionFields.parseAmount(mybids);
         this.title = title;
-        this.min_bids = min_bids;
-        this.start_bid_time = start_bid_time;
-        this.end_bid_time = end_bid_time;
-        this.status = status;
+        this.min_bids = AuctionFields.parseAmount(min_bids);
+        this.min_bids_text = AuctionFields.amountText(min_bids);
+        this.start_bid_time = AuctionFields.parseTime(start_bid_time);
+        this.end_bid_time = AuctionFields.parseTime(end_bid_time);
+        this.status = AuctionFields.parseCode(status);
         this.description = description;
     }
 
     public historyModel(String title, String min_bids, String start_bid_time, String end_bid_time, String status, String category, String description, String auc_id) {
-
-        this.title=title;
-        this.min_bids=min_bids;
-        this.start_bid_time=start_bid_time;
-        this.end_bid_time=end_bid_time;
-        this.status=status;
-        this.category=category;
-        this.description=description;
-        this.auc_id=auc_id;
-
+        this(AuctionFields.parseId(auc_id), title, description, AuctionFields.parseAmount(min_bids),
+                AuctionFields.parseCode(status), AuctionFields.parseCode(category),
+                AuctionFields.parseTime(start_bid_time), AuctionFields.parseTime(end_bid_time));
+        this.min_bids_text = AuctionFields.amountText(min_bids);
     }
 
+    public historyModel(long auc_id, String title, String description, long min_bids, int status, int category, long start_bid_time, long end_bid_time) {
+        this(auc_id, title, description, min_bids, null, 0, status, category, start_bid_time, end_bid_time);
+    }
 
-    private  String mybids;
-    private String title;
-
-    public String getTitle() {
-        return title;
+    public historyModel(long auc_id, String title, String description, long min_bids, long mybids, int status, int category, long start_bid_time, long end_bid_time) {
+        this(auc_id, title, description, min_bids, null, mybids, status, category, start_bid_time, end_bid_time);
     }
 
-    public void setTitle(String title) {
+    public historyModel(long auc_id, String title, String description, long min_bids, String min_bids_text, long mybids, int status, int category, long start_bid_time, long end_bid_time) {
+        this.auc_id = auc_id;
         this.title = title;
+        this.description = description;
+        this.min_bids = min_bids;
+        this.min_bids_text = min_bids_text;
+        this.mybids = mybids;
+        this.status = status;
+        this.category = category;
+        this.start_bid_time = start_bid_time;
+        this.end_bid_time = end_bid_time;
     }
 
-    public String getMin_bids() {
-        return min_bids;
-    }
 
-    public void setMin_bids(String min_bids) {
-        this.min_bids = min_bids;
+    private long auc_id;
+    private String title;
+    private String description;
+    // minor units
+    private long min_bids;
+    // min_bids as sent when it is not an amount (min_bids is then 0), else null
+    private String min_bids_text;
+    private long mybids;
+    private int status;
+    private int category;
+    // epoch millis of the server's wall clock, 0 when unset
+    private long start_bid_time;
+    private long end_bid_time;
+
+    public long getId() {
+        return auc_id;
     }
 
-    public String getStart_bid_time() {
-        return start_bid_time;
+    public String getTitle() {
+        return title;
     }
 
-    public void setStart_bid_time(String start_bid_time) {
-        this.start_bid_time = start_bid_time;
+    public String getDescription() {
+        return description;
     }
 
-    public String getEnd_bid_time() {
-        return end_bid_time;
+    public long getMinBidMinor() {
+        return min_bids;
     }
 
-    public void setEnd_bid_time(String end_bid_time) {
-        this.end_bid_time = end_bid_time;
+    /**
+     * The backend's min_bids verbatim when it is not an amount, else null.
+     */
+    public String getMinBidText() {
+        return min_bids_text;
     }
 
-
-
-    public String getStatus() {
-        return status;
+    public long getMyBidMinor() {
+        return mybids;
     }
 
-    public void setStatus(String status) {
-        this.status = status;
+    public int getStatusCode() {
+        return status;
     }
 
-    private String min_bids;
-    private String start_bid_time;
-    private String end_bid_time;
-    private String auc_id;
-    private String status;
-
-    public String getCategory() {
+    public int getCategoryCode() {
         return category;
     }
 
-    public void setCategory(String category) {
-        this.category = category;
+    public long getStartMillis() {
+        return start_bid_time;
     }
 
-    public String getDescription() {
-        return description;
+    public long getEndMillis() {
+        return end_bid_time;
     }
 
-    public void setDescription(String description) {
-        this.description = description;
+    public String getAuc_id() {
+        return String.valueOf(auc_id);
     }
 
-    private String category;
-    private String description;
+    public String getMin_bids() {
+        return min_bids_text != null ? min_bids_text : AuctionFields.formatAmount(min_bids);
+    }
 
+    public String getMybids() {
+        return AuctionFields.formatAmount(mybids);
+    }
 
-    public String getAuc_id() {
-        return auc_id;
+    public String getStatus() {
+        return String.valueOf(status);
     }
 
-    public void setAuc_id(String auc_id) {
-        this.auc_id = auc_id;
+    public String getCategory() {
+        return String.valueOf(category);
     }
 
-    public String getMybids() {
-        return mybids;
+    public String getStart_bid_time() {
+        return AuctionFields.formatTime(start_bid_time);
     }
 
-    public void setMybids(String mybids) {
-        this.mybids = mybids;
+    public String getEnd_bid_time() {
+        return AuctionFields.formatTime(end_bid_time);
     }
 }
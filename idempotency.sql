@@ -0,0 +1,18 @@
+--
+-- Idempotent writes
+--
+-- The app's outbox retries bids and auction create/update until they get an
+-- answer, tagging each with a client-generated idempotency_key. The write
+-- scripts look the key up first: a known key returns the stored response and
+-- writes nothing; otherwise the write and the key are committed in one
+-- transaction.
+--
+
+CREATE TABLE `request_log` (
+  `idempotency_key` varchar(64) NOT NULL,
+  `endpoint` varchar(100) NOT NULL,
+  `response` text NOT NULL,
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`idempotency_key`),
+  KEY `created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
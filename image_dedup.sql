@@ -0,0 +1,24 @@
+--
+-- Photos the server already has are linked, not uploaded again
+--
+-- Before uploading, the app sends Image/link the SHA-256 of every photo it
+-- is about to send. Photos whose hash is in image_blob are added to the
+-- auction straight away, and only the rest are uploaded. Sellers re-listing
+-- a lot with the same pictures send nothing but hashes.
+--
+-- The app also sends a 64-bit difference hash of each photo (dHash: the
+-- brightness gradient of a 9x8 grey thumbnail), which image_phash keeps
+-- per SHA-256. With near=1, a photo with no exact match is linked to one
+-- of the seller's earlier photos within a few bits of it, so re-encoded or
+-- slightly recropped copies of the same picture are not stored twice.
+-- Only the seller's own auctions are searched.
+--
+
+CREATE TABLE `image_phash` (
+  `hash` char(64) NOT NULL,
+  `phash` char(16) NOT NULL,
+  PRIMARY KEY (`hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+ALTER TABLE `auction_image`
+  ADD UNIQUE KEY `auction_image_hash` (`auction_id`, `image_hash`);
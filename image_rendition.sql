@@ -0,0 +1,26 @@
+--
+-- Smaller renditions of every auction photo
+--
+-- Photos are stored at a fixed ladder of sizes: thumb (240 px on the long
+-- side), medium (720 px) and the full photo (1280 px). The app makes the
+-- two smaller ones while it encodes the photo for upload and posts them to
+-- Image/renditions once the photo itself is stored. Each rendition is an
+-- ordinary image_blob; image_rendition maps a photo's hash and a size to it.
+--
+-- Only the photo's uploader (the seller of the first auction it was added
+-- to) may add its renditions, and a row is never replaced: the first
+-- rendition of a size stays, since its URL is cached as immutable. A plain
+-- INSERT against the primary key enforces that.
+--
+-- images/<hash>?size=thumb serves the rendition. A photo without one (any
+-- photo stored before this change) is served whole under that URL, with a
+-- one-day lifetime instead of a year, so the rendition is picked up once it
+-- exists.
+--
+
+CREATE TABLE `image_rendition` (
+  `hash` char(64) NOT NULL,
+  `size` varchar(10) NOT NULL,
+  `rendition_hash` char(64) NOT NULL,
+  PRIMARY KEY (`hash`, `size`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
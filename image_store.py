@@ -0,0 +1,222 @@
+"""Content-addressed image store, and the migration of base64 photo columns into it.
+
+Image bytes live outside the database, one file per SHA-256 of the bytes
+(images/ab/abcdef...), so the same photo uploaded twice is stored once and a
+URL, once handed out, never changes what it points to. The database keeps only
+the hash and the image's metadata (image_store.sql).
+
+    python3 image_store.py --images DIR [--dump auction_biding-3.sql | --sqlite FILE]
+                           [--sql-out updates.sql] [--clear] [--batch 50]
+
+walks auction_image.auction_photo and user.photo in id order, a batch at a
+time, decodes each base64 value into the store and sets image_hash /
+photo_hash on the row. Rows that already have a hash are skipped, so the
+migration can be stopped and rerun. --sql-out also writes the resulting
+image_blob rows and hash updates as MySQL statements, for applying to the
+live database what was migrated from a dump. --clear empties the base64
+column of every migrated row.
+"""
+
+import argparse
+import base64
+import binascii
+import hashlib
+import os
+import sqlite3
+import struct
+import tempfile
+
+# (table, base64 column, hash column)
+PHOTO_COLUMNS = (("auction_image", "auction_photo", "image_hash"),
+                 ("user", "photo", "photo_hash"))
+
+SCHEMA = ("CREATE TABLE IF NOT EXISTS image_blob (hash TEXT PRIMARY KEY, content_type TEXT, "
+          "width INTEGER, height INTEGER, bytes INTEGER)")
+
+
+class BlobStore:
+    """Image bytes on disk, named by their SHA-256."""
+
+    def __init__(self, root):
+        self.root = root
+        os.makedirs(root, exist_ok=True)
+
+    def path(self, digest):
+        return os.path.join(self.root, digest[:2], digest)
+
+    def put(self, data):
+        """Stores data and returns its hex digest; a known digest is not rewritten."""
+        digest = hashlib.sha256(data).hexdigest()
+        path = self.path(digest)
+        if not os.path.exists(path):
+            os.makedirs(os.path.dirname(path), exist_ok=True)
+            # written aside and renamed, so a reader never sees half a file
+            fd, tmp = tempfile.mkstemp(dir=os.path.dirname(path))
+            with os.fdopen(fd, "wb") as f:
+                f.write(data)
+            os.replace(tmp, path)
+        return digest
+
+    def get(self, digest):
+        try:
+            with open(self.path(digest), "rb") as f:
+                return f.read()
+        except (OSError, ValueError):
+            return None
+
+
+def image_info(data):
+    """(content type, width, height) of a JPEG or PNG, or None for anything else."""
+    if data[:8] == b"\x89PNG\r\n\x1a\n" and len(data) >= 24:
+        width, height = struct.unpack(">II", data[16:24])
+        return "image/png", width, height
+    if data[:2] != b"\xff\xd8":
+        return None
+    # walk the segments up to the start-of-frame marker, which holds the size
+    i = 2
+    while i + 4 <= len(data):
+        if data[i] != 0xFF:
+            return None
+        marker = data[i + 1]
+        if marker == 0xFF:
+            i += 1
+            continue
+        length = struct.unpack(">H", data[i + 2:i + 4])[0]
+        if 0xC0 <= marker <= 0xCF and marker not in (0xC4, 0xC8, 0xCC):
+            if i + 9 > len(data):
+                return None
+            height, width = struct.unpack(">HH", data[i + 5:i + 9])
+            return "image/jpeg", width, height
+        i += 2 + length
+    return None
+
+
+def save_blob(conn, store, data, mark="?"):
+    """Puts data in the store and records its image_blob row; returns the row, or None if not an image."""
+    info = image_info(data)
+    if info is None:
+        return None
+    digest = store.put(data)
+    blob = {"hash": digest, "content_type": info[0], "width": info[1], "height": info[2], "bytes": len(data)}
+    cursor = conn.cursor()
+    cursor.execute("SELECT 1 FROM image_blob WHERE hash = %s" % mark, (digest,))
+    if cursor.fetchone() is None:
+        cursor.execute("INSERT INTO image_blob (hash, content_type, width, height, bytes) "
+                       "VALUES (%s)" % ", ".join([mark] * 5),
+                       (digest, info[0], info[1], info[2], len(data)))
+    return blob
+
+
+def save_blobs(conn, store, datas, mark="?"):
+    """save_blob for many images at once: one lookup and one bulk insert.
+
+    Returns one blob row per element of datas, None where it is not an image.
+    """
+    blobs = []
+    for data in datas:
+        info = image_info(data)
+        if info is None:
+            blobs.append(None)
+            continue
+        blobs.append({"hash": store.put(data), "content_type": info[0], "width": info[1],
+                      "height": info[2], "bytes": len(data)})
+    digests = list({b["hash"] for b in blobs if b})
+    if not digests:
+        return blobs
+    cursor = conn.cursor()
+    cursor.execute("SELECT hash FROM image_blob WHERE hash IN (%s)" % ", ".join([mark] * len(digests)), digests)
+    known = {row[0] for row in cursor.fetchall()}
+    new = {}
+    for b in blobs:
+        if b and b["hash"] not in known:
+            new[b["hash"]] = (b["hash"], b["content_type"], b["width"], b["height"], b["bytes"])
+    if new:
+        cursor.executemany("INSERT INTO image_blob (hash, content_type, width, height, bytes) "
+                           "VALUES (%s)" % ", ".join([mark] * 5), list(new.values()))
+    return blobs
+
+
+def migrate_column(conn, store, table, column, hash_column, batch=50, clear=False, mark="?", out=None):
+    """Moves one base64 column into the store; returns (migrated, skipped).
+
+    Only one batch of base64 values is held at a time, and each batch is
+    committed on its own.
+    """
+    migrated = skipped = 0
+    last_id = -1
+    cursor = conn.cursor()
+    while True:
+        cursor.execute("SELECT id, `%s` FROM `%s` WHERE `%s` IS NULL AND id > %s ORDER BY id LIMIT %s"
+                       % (column, table, hash_column, mark, mark), (last_id, batch))
+        rows = cursor.fetchall()
+        if not rows:
+            return migrated, skipped
+        for row_id, value in rows:
+            last_id = row_id
+            try:
+                data = base64.b64decode(value or "")
+            except (binascii.Error, ValueError):
+                data = b""
+            blob = save_blob(conn, store, data, mark) if data else None
+            if blob is None:
+                skipped += 1
+                continue
+            sets = "`%s` = %s" % (hash_column, mark)
+            args = [blob["hash"]]
+            if clear:
+                sets += ", `%s` = ''" % column
+            cursor.execute("UPDATE `%s` SET %s WHERE id = %s" % (table, sets, mark), args + [row_id])
+            if out is not None:
+                out.write("INSERT IGNORE INTO `image_blob` (`hash`, `content_type`, `width`, `height`, `bytes`) "
+                          "VALUES ('%(hash)s', '%(content_type)s', %(width)d, %(height)d, %(bytes)d);\n" % blob)
+                out.write("UPDATE `%s` SET `%s` = '%s'%s WHERE `id` = %d;\n"
+                          % (table, hash_column, blob["hash"], ", `%s` = ''" % column if clear else "", int(row_id)))
+            migrated += 1
+        conn.commit()
+
+
+def migrate(conn, store, batch=50, clear=False, mark="?", out=None):
+    """Migrates every photo column; returns {table: (migrated, skipped)}."""
+    return {table: migrate_column(conn, store, table, column, hash_column, batch, clear, mark, out)
+            for table, column, hash_column in PHOTO_COLUMNS}
+
+
+def add_columns(db):
+    """image_store.sql for the SQLite copy the stand-in server runs on."""
+    db.execute(SCHEMA)
+    for table, _, hash_column in PHOTO_COLUMNS:
+        db.execute("ALTER TABLE `%s` ADD COLUMN `%s` TEXT" % (table, hash_column))
+    db.execute("CREATE INDEX IF NOT EXISTS auction_image_auction ON auction_image (auction_id)")
+    db.commit()
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--images", required=True, help="blob store directory")
+    parser.add_argument("--dump", help="MySQL dump to migrate from")
+    parser.add_argument("--sqlite", help="SQLite database to migrate in place")
+    parser.add_argument("--sql-out", help="also write the changes as MySQL statements")
+    parser.add_argument("--clear", action="store_true", help="empty the base64 column of migrated rows")
+    parser.add_argument("--batch", type=int, default=50)
+    args = parser.parse_args()
+
+    if args.sqlite:
+        conn = sqlite3.connect(args.sqlite)
+        columns = [r[1] for r in conn.execute("PRAGMA table_info(auction_image)")]
+        if "image_hash" not in columns:
+            add_columns(conn)
+    else:
+        from standin_server import load_dump
+        conn = load_dump(args.dump or "auction_biding-3.sql")
+    out = open(args.sql_out, "w") if args.sql_out else None
+    try:
+        counts = migrate(conn, BlobStore(args.images), args.batch, args.clear, out=out)
+    finally:
+        if out is not None:
+            out.close()
+    for table, (migrated, skipped) in counts.items():
+        print("%s: %d migrated, %d skipped" % (table, migrated, skipped))
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,34 @@
+--
+-- Photos as files keyed by content hash
+--
+-- Image bytes move out of the database into a content-addressed store (see
+-- image_store.py): one file per SHA-256, served at images/<hash> with a
+-- year-long immutable Cache-Control. The database keeps one image_blob row
+-- per distinct image, and the photo columns point at it by hash. Uploads
+-- are raw image bytes; responses carry the URL and the pixel size, never
+-- the bytes.
+--
+-- image_store.py fills image_hash / photo_hash from the existing base64
+-- columns. Those stay readable until every script serves URLs, and can be
+-- emptied with its --clear.
+--
+
+CREATE TABLE `image_blob` (
+  `hash` char(64) NOT NULL,
+  `content_type` varchar(50) NOT NULL,
+  `width` int(11) NOT NULL,
+  `height` int(11) NOT NULL,
+  `bytes` int(11) NOT NULL,
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+ALTER TABLE `auction_image`
+  MODIFY `auction_photo` longtext NULL,
+  ADD `image_hash` char(64) NULL,
+  ADD KEY `auction_id` (`auction_id`),
+  ADD KEY `image_hash` (`image_hash`);
+
+ALTER TABLE `user`
+  MODIFY `photo` longtext NULL,
+  ADD `photo_hash` char(64) NULL;
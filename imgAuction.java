@@ -4,16 +4,19 @@ import android.app.Activity;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.provider.MediaStore;
+import android.util.Base64;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Base64;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import org.json.JSONArray;
@@ -22,13 +25,20 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
+import io.com.didingapp.ImageLoader;
 import io.com.didingapp.R;
 import io.com.didingapp.Utility;
+import io.com.didingapp.Volley.ApiClient;
+import io.com.didingapp.Volley.ChunkedUpload;
+import io.com.didingapp.Volley.ImageBatchUploadRequest;
+import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.Volley.VolleyApi;
 import io.com.didingapp.main.view.dashBoard;
 
@@ -36,11 +46,11 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
     private String userChoosenTask;
     private int REQUEST_CAMERA = 0, SELECT_FILE = 1;
 //    String [] img ;
-    String img = "";
     int j = 0;
-    int i=0;
     ProgressBar imgpro;
     Button uploadimg;
+    TextView uploadProgress;
+    CheckBox reuseSimilar;
 
 
 
@@ -56,12 +66,46 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
     // The image view that used to display user selected image.
     private ImageView selectedPictureImageView;
 
-    // Save user selected image uri list.
-    private ArrayList<String> userSelectedImageUriList = null;
+    // Save user selected photos, as the JPEG files that will be uploaded.
+    private ArrayList<File> userSelectedImageUriList = null;
 
     // Currently displayed user selected image index in userSelectedImageUriList.
     private int currentDisplayedUserSelectImageIndex = 0;
-    Bitmap bm,thumbnail;
+    Bitmap thumbnail;
+
+    private PhotoEncoder encoder;
+    private ChunkedUpload chunkedUpload;
+    // the small photos of the current upload, sent together in one request, and how many of them were stored
+    private ArrayList<File> batch = new ArrayList<>();
+    private int batchStored;
+    // hashes and renditions of each encoded file
+    private final HashMap<File, PhotoEncoder.Encoded> encodedPhotos = new HashMap<>();
+    // photos stored on the server whose renditions are still to be sent
+    private final ArrayList<PhotoEncoder.Encoded> renditionsDue = new ArrayList<>();
+    // photos picked so far, and how many of them are still being compressed
+    private int picked;
+    private int encoding;
+
+    private final PhotoEncoder.Listener encoded = new PhotoEncoder.Listener() {
+        @Override
+        public void onEncoded(int index, PhotoEncoder.Encoded photo) {
+            encoding--;
+            File file = photo.file;
+            userSelectedImageUriList.add(file);
+            encodedPhotos.put(file, photo);
+            ImageLoader.setImage(selectedPictureImageView, Uri.fromFile(file).toString());
+            uploadimg.setText("Upload");
+            showProgress();
+        }
+
+        @Override
+        public void onFailed(int index, Exception e) {
+            encoding--;
+            e.printStackTrace();
+            Toast.makeText(imgAuction.this, "Could not read photo " + (index + 1), Toast.LENGTH_SHORT).show();
+            showProgress();
+        }
+    };
 
 
 
@@ -74,12 +118,18 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
 
         selectedPictureImageView = (ImageView) findViewById(R.id.selected_picture_imageview);
         uploadimg  = findViewById(R.id.upload);
+        uploadProgress = findViewById(R.id.upload_progress);
+        reuseSimilar = findViewById(R.id.reuse_similar);
+        // only the backend routes can link a photo to one already stored
+        reuseSimilar.setVisibility(ApiClient.backendRoutes ? View.VISIBLE : View.GONE);
 
         Button choosePictureButton = (Button) findViewById(R.id.choose_picture_button);
         Button showSelectedPictureButton = (Button) findViewById(R.id.show_selected_picture_button);
         imgpro = findViewById(R.id.progrimg);
 
         userSelectedImageUriList = new ArrayList<>();
+        encoder = new PhotoEncoder(this);
+        encoder.clear();
 
 
 //        if(userSelectedImageUriList.size()==0){
@@ -93,14 +143,14 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
         uploadimg.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
+                if (encoding > 0) {
+                    Toast.makeText(getBaseContext(),"please wait, photos are still being prepared",Toast.LENGTH_LONG).show();
+                    return;
+                }
                 imgpro.setVisibility(View.VISIBLE);
                 if(userSelectedImageUriList.size()>0){
-                    for (i=0;i<userSelectedImageUriList.size();i++){
-
-
-                        System.out.println("afasda: "+img);
-                        VolleyApi.getInstance().insertAuctionImg(imgAuction.this, imgAuction.this,userSelectedImageUriList.get(i));
-                    }
+                    uploadimg.setEnabled(false);
+                    upload();
 
                 }else {
                     Toast.makeText(getBaseContext(),"please add atleast one",Toast.LENGTH_LONG).show();
@@ -129,7 +179,7 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
 
                 if( userSelectedImageUriList.size()!=0 ){
 
-                    Utility.setImage(selectedPictureImageView,userSelectedImageUriList.get(j));
+                    ImageLoader.setImage(selectedPictureImageView, Uri.fromFile(userSelectedImageUriList.get(j)).toString());
                     j++;
                     if(j==userSelectedImageUriList.size()){
                         j=0;
@@ -164,22 +214,13 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
     }
 
 
-    @SuppressWarnings("deprecation")
     private void onSelectFromGalleryResult(Intent data) {
 
-        bm = null;
-        if (data != null) {
-            try {
-                bm = MediaStore.Images.Media.getBitmap(getApplicationContext().getContentResolver(), data.getData());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (data != null && data.getData() != null) {
+            encoding++;
+            encoder.encode(picked++, data.getData(), encoded);
+            showProgress();
         }
-
-        img = getStringImage(bm);
-        userSelectedImageUriList.add(img);
-        Utility.setImage(selectedPictureImageView,img);
-        uploadimg.setText("Upload");
     }
     private void onCaptureImageResult(Intent data) {
         thumbnail = (Bitmap) data.getExtras().get("data");
@@ -200,22 +241,254 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
         } catch (IOException e) {
             e.printStackTrace();
         }
-        img = getStringImage(thumbnail);
-        userSelectedImageUriList.add(img);
+        encoding++;
+        encoder.encode(picked++, thumbnail, encoded);
+        showProgress();
+    }
+
+
+    private void showProgress() {
+        String text;
+        if (encoding > 0) {
+            text = "Compressing photo " + (picked - encoding + 1) + " of " + picked;
+        } else {
+            long bytes = 0;
+            for (File file : userSelectedImageUriList) {
+                bytes += file.length();
+            }
+            text = userSelectedImageUriList.size() + " photos ready, " + (bytes + 1023) / 1024 + " KB";
+        }
+        uploadProgress.setText(text);
+        uploadProgress.setVisibility(View.VISIBLE);
+    }
+
+    // photos the server has already are only linked; the rest are uploaded
+    private void upload() {
+        if (!ApiClient.backendRoutes) {
+            j = 0;
+            sendEach(0);
+            return;
+        }
+        ArrayList<String> sha256 = new ArrayList<>();
+        ArrayList<String> phash = new ArrayList<>();
+        for (File file : userSelectedImageUriList) {
+            sha256.add(encodedPhotos.get(file).sha256);
+            phash.add(encodedPhotos.get(file).phash);
+        }
+        final ArrayList<File> files = new ArrayList<>(userSelectedImageUriList);
+        uploadProgress.setText("Checking for photos already uploaded");
+        ApiClient.getInstance(this).linkAuctionImages(this, new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String obj) {
+                try {
+                    JSONArray parts = new JSONObject(obj).getJSONArray("data");
+                    for (int k = 0; k < parts.length(); k++) {
+                        JSONObject part = parts.getJSONObject(k);
+                        if (!part.getString("status").equalsIgnoreCase("missing")) {
+                            File file = files.get(part.getInt("part"));
+                            userSelectedImageUriList.remove(file);
+                            file.delete();
+                            // a similar photo has its own renditions, or does without
+                            if (part.getString("status").equalsIgnoreCase("linked")
+                                    && part.optString("renditions").isEmpty()) {
+                                renditionsDue.add(encodedPhotos.get(file));
+                            }
+                        }
+                    }
+                } catch (JSONException e) {
+                    // nothing linked that we know of: upload them all
+                    e.printStackTrace();
+                }
+                j = 0;
+                if (userSelectedImageUriList.isEmpty()) {
+                    uploaded(files.size());
+                } else {
+                    send();
+                }
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                // only a shortcut: without it every photo is uploaded
+                e.printStackTrace();
+                send();
+            }
+        }, Singleton.auc_id, sha256, phash, reuseSimilar.isChecked());
+    }
+
+    // the small photos together in one request streamed from the files, then each big one in resumable chunks
+    private void send() {
+        batch = new ArrayList<>();
+        batchStored = 0;
+        for (File file : userSelectedImageUriList) {
+            if (file.length() <= ChunkedUpload.CHUNKED_PHOTO_BYTES) {
+                batch.add(file);
+            }
+        }
+        if (batch.isEmpty()) {
+            uploadInChunks();
+            return;
+        }
+        ApiClient.getInstance(this).uploadAuctionImages(this, this, Singleton.auc_id, batch,
+                new ImageBatchUploadRequest.Progress() {
+                    @Override
+                    public void onPart(int index, int count) {
+                        uploadProgress.setText("Uploading photo " + (index + 1) + " of " + count);
+                    }
+                });
+    }
+
+    // the route the app has always used: one photo per request, inline as base64, no thumbnails
+    private void sendEach(final int stored) {
+        if (userSelectedImageUriList.isEmpty()) {
+            uploaded(stored);
+            return;
+        }
+        final File file = userSelectedImageUriList.get(0);
+        String photo;
+        try {
+            photo = Base64.encodeToString(read(file), Base64.DEFAULT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            uploadFailed();
+            return;
+        }
+        uploadProgress.setText("Uploading photo " + (stored + 1) + " of " + (stored + userSelectedImageUriList.size()));
+        ApiClient.getInstance(this).insertAuctionImg(this, new VolleyApi.ResponseListener() {
+            @Override
+            public void _onNext(String obj) {
+                try {
+                    JSONObject status = new JSONObject(obj).getJSONArray("msg").getJSONObject(0);
+                    if (status.getString("status").equalsIgnoreCase("200")) {
+                        userSelectedImageUriList.remove(file);
+                        file.delete();
+                        sendEach(stored + 1);
+                        return;
+                    }
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                // pressing upload again sends this photo and the ones after it
+                uploadFailed();
+            }
+
+            @Override
+            public void _onResponseError(Throwable e) {
+                e.printStackTrace();
+                uploadFailed();
+            }
+        }, photo);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        byte[] data = new byte[(int) file.length()];
+        int read = 0;
+        while (read < data.length) {
+            int n = in.read(data, read, data.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        in.close();
+        return data;
+    }
+
+    private void uploadInChunks() {
+        if (userSelectedImageUriList.isEmpty()) {
+            uploaded(batchStored);
+            return;
+        }
+        final ArrayList<File> files = new ArrayList<>(userSelectedImageUriList);
+        final ArrayList<File> stored = new ArrayList<>();
+        chunkedUpload = ApiClient.getInstance(this).uploadAuctionImagesInChunks(this, Singleton.auc_id, files,
+                new ChunkedUpload.Listener() {
+                    @Override
+                    public void onProgress(int index, long sent, long total) {
+                        uploadProgress.setText("Uploading photo " + (index + 1) + " of " + files.size()
+                                + ", " + (total > 0 ? sent * 100 / total : 100) + "%");
+                    }
+
+                    @Override
+                    public void onUploaded(int index, String response) {
+                        stored.add(files.get(index));
+                        renditionsDue.add(encodedPhotos.get(files.get(index)));
+                        files.get(index).delete();
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        chunkedUpload = null;
+                        uploaded(batchStored + files.size());
+                    }
 
+                    @Override
+                    public void onFailed(int index, Throwable error) {
+                        chunkedUpload = null;
+                        error.printStackTrace();
+                        // the server keeps the part it has: pressing upload again resumes this photo
+                        userSelectedImageUriList.removeAll(stored);
+                        j = 0;
+                        uploadFailed();
+                    }
+                });
+    }
 
-        Utility.setImage(selectedPictureImageView,img);
-        uploadimg.setText("Upload");
+    @Override
+    protected void onDestroy() {
+        if (chunkedUpload != null) {
+            chunkedUpload.cancel();
+        }
+        super.onDestroy();
     }
 
+    private void uploaded(final int count) {
+        if (renditionsDue.isEmpty()) {
+            Toast.makeText(this, "Successesfully insert Image :" + count, Toast.LENGTH_SHORT).show();
+            imgpro.setVisibility(View.GONE);
+            encoder.clear();
+            startActivity(new Intent(imgAuction.this, dashBoard.class));
+            return;
+        }
+        // the photos are stored: their thumbnails next, best effort, the full photo stands in for any that fail
+        ArrayList<PhotoEncoder.Encoded> due = new ArrayList<>(renditionsDue);
+        renditionsDue.clear();
+        final int[] waiting = {due.size()};
+        uploadProgress.setText("Uploading thumbnails");
+        for (final PhotoEncoder.Encoded photo : due) {
+            VolleyApi.ResponseListener done = new VolleyApi.ResponseListener() {
+                @Override
+                public void _onNext(String obj) {
+                    finish();
+                }
+
+                @Override
+                public void _onResponseError(Throwable e) {
+                    e.printStackTrace();
+                    finish();
+                }
 
-    public String getStringImage(Bitmap bmp) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bmp.compress(Bitmap.CompressFormat.JPEG, 20, baos);
-        byte[] imageBytes = baos.toByteArray();
-        String encodedImage = Base64.encodeToString(imageBytes, Base64.DEFAULT);
-        return encodedImage;
+                private void finish() {
+                    if (--waiting[0] == 0) {
+                        uploaded(count);
+                    }
+                }
+            };
+            if (photo.renditions.isEmpty()) {
+                done._onNext(null);
+            } else {
+                ApiClient.getInstance(this).uploadImageRenditions(this, done, Singleton.id, photo.sha256, photo.renditions);
+            }
+        }
+    }
 
+    private void uploadFailed() {
+        Toast.makeText(this, "Unsuccessesfully", Toast.LENGTH_SHORT).show();
+        imgpro.setVisibility(View.GONE);
+        // pressing upload again sends the photos still in the list
+        uploadimg.setEnabled(true);
+        showProgress();
     }
 
 
@@ -304,7 +577,8 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
 
     @Override
     public void _onResponseError(Throwable e) {
-
+        e.printStackTrace();
+        uploadFailed();
     }
 
     @Override
@@ -317,22 +591,38 @@ public class imgAuction extends AppCompatActivity  implements VolleyApi.Response
 
             if (obj2.getString("status").equalsIgnoreCase("200")) {
 
-                for (i=0;i<userSelectedImageUriList.size();i++){
-
-                    Toast.makeText(this, "Successesfully insert Image :" + i, Toast.LENGTH_SHORT).show();
-
+                for (File file : batch) {
+                    renditionsDue.add(encodedPhotos.get(file));
                 }
-                imgpro.setVisibility(View.GONE);
+                userSelectedImageUriList.removeAll(batch);
+                batchStored = batch.size();
+                // the big photos are left
+                uploadInChunks();
 
             }
+            else if (obj2.getString("status").equalsIgnoreCase("207")) {
+                // some photos were stored: keep only the others, and the big ones not tried yet, for the next try
+                JSONArray parts = obj1.getJSONArray("data");
+                for (int k = 0; k < parts.length(); k++) {
+                    JSONObject part = parts.getJSONObject(k);
+                    File file = batch.get(part.getInt("part"));
+                    if (part.getString("status").equalsIgnoreCase("200")) {
+                        renditionsDue.add(encodedPhotos.get(file));
+                        userSelectedImageUriList.remove(file);
+                        file.delete();
+                    }
+                }
+                j = 0;
+                uploadFailed();
+            }
             else {
-                Toast.makeText(this, "Unsuccessesfully", Toast.LENGTH_SHORT).show();
+                uploadFailed();
             }
-            startActivity(new Intent(imgAuction.this, dashBoard.class));
 
     } catch (
     JSONException e) {
         e.printStackTrace();
+        uploadFailed();
 
     }
 
@@ -28,6 +28,7 @@ import org.json.JSONObject;
 import java.util.HashMap;
 import java.util.Map;
 
+import io.com.didingapp.Volley.LoginCheckCache;
 import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.Volley.VolleyApi;
 import io.com.didingapp.Volley.VolleySingleton;
@@ -68,7 +69,7 @@ public class otpVerification extends AppCompatActivity implements VolleyApi.Resp
         et5.addTextChangedListener(new GenericTextWatcher(et5));
         et6.addTextChangedListener(new GenericTextWatcher(et6));
 
-        VolleyApi.getInstance().loginCheck(this,this, Singleton.mobile);
+        LoginCheckCache.getInstance().loginCheck(this,this, Singleton.mobile, "otp");
 
 
     }
@@ -20,6 +20,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import io.com.didingapp.Volley.ApiMetrics;
+import io.com.didingapp.Volley.LoginCheckCache;
 import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.Volley.VolleyApi;
 
@@ -54,14 +56,14 @@ public class paymentActivity extends AppCompatActivity  implements VolleyApi.Res
 
     private void updatebalance() {
         flag=2;
-        VolleyApi.getInstance().balance(paymentActivity.this,this,String.valueOf(k));
+        VolleyApi.getInstance().balance(paymentActivity.this,ApiMetrics.wrap("balance",this),String.valueOf(k));
     }
 
 
     private void fetching() {
         flag=1;
 
-        VolleyApi.getInstance().getcard(paymentActivity.this,this,cardNumber.getText().toString().replace(" ",""),cvv.getText().toString(),pin.getText().toString(),exp_date.getText().toString());
+        VolleyApi.getInstance().getcard(paymentActivity.this,ApiMetrics.wrap("getcard",this),cardNumber.getText().toString().replace(" ",""),cvv.getText().toString(),pin.getText().toString(),exp_date.getText().toString());
 
     }
 
@@ -95,6 +97,7 @@ public class paymentActivity extends AppCompatActivity  implements VolleyApi.Res
                 if(obj2.getString("status").equalsIgnoreCase("200")){
 
                     Utility.addPreferences(this,"balance",Singleton.balance);
+                    LoginCheckCache.getInstance().invalidate(Singleton.mobile);
 
                     Toast.makeText(this, "Successesfully updated", Toast.LENGTH_SHORT).show();
                     finish();
@@ -39,6 +39,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import io.com.didingapp.Volley.ApiClient;
+import io.com.didingapp.Volley.LoginCheckCache;
 import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.Volley.VolleyApi;
 import io.com.didingapp.Volley.VolleySingleton;
@@ -76,7 +78,7 @@ public class signupActivity extends AppCompatActivity implements VolleyApi.Respo
                 lastnm.setText(Singleton.lastname);
                 email.setText(Singleton.email);
                 password.setText(Singleton.password);
-                Utility.setImage(addphoto, Singleton.img);
+                ImageLoader.setImage(addphoto, Singleton.img);
 
             }
 //            System.out.println("is edit    ;"+isEdit+"jdjkd");
@@ -147,7 +149,7 @@ public class signupActivity extends AppCompatActivity implements VolleyApi.Respo
             } else {
 
                 flag = 1;
-                VolleyApi.getInstance().loginCheck(this, this, Singleton.mobile);
+                ApiClient.getInstance(this).loginCheck(this, this, Singleton.mobile, "id", "isActive");
                 Singleton.mobile = phone.getText().toString().trim();
 
 
@@ -369,6 +371,7 @@ public class signupActivity extends AppCompatActivity implements VolleyApi.Respo
                 try {
                     JSONObject obj1 = new JSONObject(obj);
                     JSONArray jArray = obj1.getJSONArray("msg");
+                    LoginCheckCache.getInstance().invalidate(Singleton.mobile);
 
 
                     startActivity(new Intent(signupActivity.this, otpVerification.class));
@@ -385,6 +388,7 @@ public class signupActivity extends AppCompatActivity implements VolleyApi.Respo
                 try {
                     JSONObject obj1 = new JSONObject(obj);
                     JSONArray jArray = obj1.getJSONArray("msg");
+                    LoginCheckCache.getInstance().invalidateAll();
                     activeUser(this);
 
 
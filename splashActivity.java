@@ -8,6 +8,7 @@ import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 
 
+import io.com.didingapp.Volley.MainThreadWatchdog;
 import io.com.didingapp.Volley.Singleton;
 import io.com.didingapp.main.view.dashBoard;
 
@@ -17,6 +18,9 @@ public class splashActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
+        if (BuildConfig.DEBUG) {
+            MainThreadWatchdog.install();
+        }
 
         Thread timerThread = new Thread() {
             public void run() {
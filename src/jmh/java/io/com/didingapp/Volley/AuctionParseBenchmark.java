@@ -0,0 +1,93 @@
+package io.com.didingapp.Volley;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.com.didingapp.history.historyModel;
+
+/**
+ * JMH comparison of the two ways of decoding an auction feed: the old
+ * JSONObject tree plus "" + getString copy, and {@link AuctionFeedReader}.
+ *
+ * The feed is src/jmh/resources/feed_upcoming.json, an Auction/upcoming
+ * response captured from standin_server.py, with its rows repeated (under
+ * fresh ids) up to the rows parameter. android.util.JsonReader and org.json
+ * have to be real implementations on the classpath, e.g. Robolectric's
+ * android-all jar rather than the SDK stubs. It lives in the jmh source
+ * set, compiled against the app classes as a JVM benchmark with jmh-core
+ * and never packaged into the app. Run with -prof gc to see the allocation
+ * side, which is what the streaming path is about.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AuctionParseBenchmark {
+
+    @Param({"16", "1000", "10000"})
+    public int rows;
+
+    @Param("src/jmh/resources/feed_upcoming.json")
+    public String feed;
+
+    private String response;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        JSONArray captured = new JSONObject(new String(Files.readAllBytes(Paths.get(feed)),
+                StandardCharsets.UTF_8)).getJSONArray("data");
+        JSONArray data = new JSONArray();
+        for (int i = 0; i < rows; i++) {
+            JSONObject row = new JSONObject(captured.getJSONObject(i % captured.length()).toString());
+            row.put("id", String.valueOf(i + 1));
+            data.put(row);
+        }
+        response = new JSONObject().put("data", data).toString();
+    }
+
+    @Benchmark
+    public ArrayList<historyModel> tree() throws JSONException {
+        ArrayList<historyModel> foodModels = new ArrayList<>();
+        JSONArray jArray = new JSONObject(response).getJSONArray("data");
+        for (int i = 0; i < jArray.length(); i++) {
+            JSONObject json_data = jArray.getJSONObject(i);
+            foodModels.add(new historyModel(
+                    "" + json_data.getString("title"),
+                    "" + json_data.getString("min_bids"),
+                    "" + json_data.getString("start_bid_time"),
+                    "" + json_data.getString("end_bid_time"),
+                    "" + json_data.getString("status"),
+                    "" + json_data.getString("cat_id"),
+                    "" + json_data.getString("description"),
+                    "" + json_data.getString("id")
+            ));
+        }
+        return foodModels;
+    }
+
+    @Benchmark
+    public ArrayList<historyModel> stream() throws JSONException {
+        return AuctionFeedReader.read(response).data;
+    }
+}
@@ -0,0 +1,968 @@
+"""Local stand-in for the auction PHP backend.
+
+Serves the read endpoints used by ApiClient from an in-memory SQLite copy of
+auction_biding-3.sql, answering in the same JSON shapes as the PHP scripts
+(every column as a string, rows under "data"). Responses carry ETag and
+Last-Modified headers, and conditional requests are answered with 304, so
+the client-side HTTP cache can be exercised without the live backend.
+
+    python3 standin_server.py [--port 8080] [--dump auction_biding-3.sql]
+                              [--cert cert.pem --key key.pem]
+
+Connections are kept alive (HTTP/1.1); with --cert and --key the server
+speaks TLS, which is what bench_transport.py measures connection reuse on.
+
+GET /__stats returns per-path counts of full (200) and revalidated (304)
+responses; POST /__stats/reset clears them. POST /__auction upserts an
+auction_creation row from its form fields and bumps updated_at, which is how
+tests produce changes for the delta sync.
+
+The write endpoints (Biding/insert, Auction/create, Auction/update) honour
+the outbox's idempotency_key the way idempotency.sql describes: a repeated
+key gets the first response back and nothing is written again.
+
+GET Biding/stream?auction_id=N is a server-sent event stream of new bids on
+one auction, as BidStream consumes it. It opens with a data-less event whose
+id is the newest bid, then pushes every bid inserted afterwards; a client
+reconnecting with Last-Event-ID gets the bids it missed first.
+
+Photos are kept as files in a content-addressed store (image_store.py, under
+--images), and the dump's base64 photos are migrated into it at startup.
+POST Image/upload?auction_id=N takes the raw image bytes as the body, and
+POST Image/batch?auction_id=N any number of them as multipart/form-data
+parts, stored in one transaction with a status per part; GET
+Auction/images?auction_id=N lists an auction's photos as URLs with their
+pixel size, and GET images/<hash> serves the bytes, cacheable for good.
+
+Image/link (auction_id, sha256=h1,h2.., phash=p1,p2.., near=1) adds the
+photos the store already has to the auction and lists the ones still to
+upload, as image_dedup.sql describes.
+
+POST Image/renditions?hash=..&user_id=.. takes the thumb and medium
+renditions of a stored photo as multipart parts named after the size, from
+the user who uploaded the photo and only once per size, and
+GET images/<hash>?size=thumb|medium serves them (image_rendition.sql).
+
+Every read endpoint takes fields=name1,name2.. and then selects and returns
+only those columns of each row, so a screen that shows a title and a price
+does not get the description or the photo; without it every column comes
+back, as from the PHP scripts. An unknown name is answered with status 400.
+POST Login/check (mobile) is loginCheck: the user rows of that mobile
+under "login", with photo_url pointing at the stored photo. GET
+Auction/detail?id=N is one auction row, for the columns a list left out.
+
+Large photos can also be sent in resumable chunks, as chunked_upload.sql
+describes: POST Upload/start (auction_id, sha256, length) opens or resumes a
+session, POST Upload/chunk?id=..&offset=.. appends one raw chunk carrying an
+Upload-Chunk-SHA256 header, and GET Upload/status?id=.. returns the offset
+the server has; a completed session stays, at offset = length with the
+stored image row. fault_upload.py drives them through a connection-killing
+proxy.
+"""
+
+import argparse
+import hashlib
+import json
+import os
+import re
+import sqlite3
+import ssl
+import tempfile
+import threading
+import time
+import uuid
+from collections import defaultdict
+from email.utils import formatdate, parsedate_to_datetime
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from urllib.parse import parse_qs, urlparse
+
+import image_store
+
+AUCTION_COLUMNS = ("id", "title", "description", "min_bids", "status", "start_bid_time",
+                   "end_bid_time", "cat_id", "user_id")
+
+INSERT_RE = re.compile(r"INSERT INTO `(\w+)` \(([^)]*)\) VALUES\s*", re.S)
+
+
+def parse_tuples(sql, pos):
+    """Parses the VALUES tuples starting at pos, up to the closing ';'."""
+    rows, row, i = [], None, pos
+    while i < len(sql):
+        c = sql[i]
+        if c == "(":
+            row, i = [], i + 1
+        elif c == ")":
+            rows.append(row)
+            i += 1
+        elif c == ";":
+            return rows
+        elif c == "'":
+            i += 1
+            buf = []
+            while sql[i] != "'":
+                if sql[i] == "\\":
+                    i += 1
+                    buf.append({"n": "\n", "r": "\r", "t": "\t", "0": "\0"}.get(sql[i], sql[i]))
+                else:
+                    buf.append(sql[i])
+                i += 1
+            row.append("".join(buf))
+            i += 1
+        elif c.isdigit() or c == "-":
+            j = i
+            while sql[j] not in ",)":
+                j += 1
+            row.append(sql[i:j].strip())
+            i = j
+        elif sql.startswith("NULL", i):
+            row.append(None)
+            i += 4
+        else:
+            i += 1
+    return rows
+
+
+def load_dump(path):
+    """Loads every INSERT of the MySQL dump into an in-memory SQLite db."""
+    with open(path, encoding="utf-8", errors="replace") as f:
+        sql = f.read()
+    db = sqlite3.connect(":memory:", check_same_thread=False)
+    db.row_factory = sqlite3.Row
+    created = set()
+    for m in INSERT_RE.finditer(sql):
+        table = m.group(1)
+        cols = [c.strip(" `") for c in m.group(2).split(",")]
+        if table not in created:
+            defs = ", ".join(
+                "`%s` INTEGER PRIMARY KEY" % c if c == "id" else "`%s` TEXT" % c for c in cols)
+            db.execute("CREATE TABLE `%s` (%s)" % (table, defs))
+            created.add(table)
+        marks = ", ".join("?" * len(cols))
+        db.executemany("INSERT OR REPLACE INTO `%s` (%s) VALUES (%s)"
+                       % (table, ", ".join("`%s`" % c for c in cols), marks),
+                       parse_tuples(sql, m.end()))
+    # auction_sync.sql adds the same column to the real schema
+    db.execute("ALTER TABLE auction_creation ADD COLUMN updated_at TEXT")
+    db.execute("UPDATE auction_creation SET updated_at = ?", (now(),))
+    db.execute("CREATE TABLE request_log (idempotency_key TEXT PRIMARY KEY, endpoint TEXT, response TEXT)")
+    image_store.add_columns(db)
+    db.execute("CREATE TABLE upload_session (id TEXT PRIMARY KEY, auction_id TEXT, sha256 TEXT, "
+               "length INTEGER, offset INTEGER, image_hash TEXT, UNIQUE (auction_id, sha256))")
+    db.execute("CREATE TABLE image_phash (hash TEXT PRIMARY KEY, phash TEXT)")
+    db.execute("CREATE TABLE image_rendition (hash TEXT, size TEXT, rendition_hash TEXT, PRIMARY KEY (hash, size))")
+    db.commit()
+    return db
+
+
+def now():
+    return time.strftime("%Y-%m-%d %H:%M:%S", time.gmtime())
+
+
+class FieldError(ValueError):
+    """A fields list naming a column the endpoint does not have."""
+
+
+def fields(params, allowed):
+    """The column names params["fields"] asks for, in order, or None for all of them."""
+    value = params.get("fields")
+    if not value:
+        return None
+    names = list(dict.fromkeys(f.strip() for f in value.split(",") if f.strip()))
+    unknown = [n for n in names if n not in allowed]
+    if unknown:
+        raise FieldError("Unknown field: " + ", ".join(unknown))
+    return names
+
+
+def select_list(names, needed=()):
+    """SELECT list for the columns asked for plus those the query itself needs."""
+    if names is None:
+        return "*"
+    return ", ".join("`%s`" % c for c in dict.fromkeys(list(names) + list(needed)))
+
+
+def project(rows, names):
+    """rows cut down to the columns asked for."""
+    if names is None:
+        return rows
+    return [{k: row.get(k) for k in names} for row in rows]
+
+
+def rows_as_strings(cursor):
+    """PHP's mysqli hands every column back as a string."""
+    return [{k: (None if r[k] is None else str(r[k])) for k in r.keys()} for r in cursor]
+
+
+class Backend:
+    """Endpoint implementations; each returns a JSON-able payload."""
+
+    def __init__(self, db, images=None):
+        self.db = db
+        self.images = images
+        self.lock = threading.Lock()
+        # what fields= may name, per table; photo_url is made from photo_hash
+        self.columns = {t: [r[1] for r in db.execute("PRAGMA table_info(`%s`)" % t)]
+                        for t in ("auction_creation", "user")}
+        self.columns["user"].append("photo_url")
+        # notified after every committed bid; Biding/stream readers wait on it
+        self.bids_changed = threading.Condition()
+
+    def query(self, sql, args=()):
+        with self.lock:
+            return rows_as_strings(self.db.execute(sql, args))
+
+    @staticmethod
+    def data_or_empty(rows):
+        if not rows:
+            return {"msg": [{"status": "404", "msg": "No record found"}]}
+        return {"data": rows}
+
+    def paged(self, where, args, params):
+        """Keyset page over auction_creation ordered by (end_bid_time, id).
+
+        Without a limit the whole result is returned, as the PHP scripts do.
+        The "next" cursor is "<end_bid_time>,<id>" of the last row returned.
+        """
+        names = fields(params, self.columns["auction_creation"])
+        sql = "SELECT %s FROM auction_creation WHERE %s" % (select_list(names, ("end_bid_time", "id")), where)
+        args = list(args)
+        after = params.get("after", "")
+        if after:
+            end_bid_time, _, last_id = after.rpartition(",")
+            sql += " AND (end_bid_time > ? OR (end_bid_time = ? AND id > ?))"
+            args += [end_bid_time, end_bid_time, int(last_id)]
+        sql += " ORDER BY end_bid_time, id"
+        limit = int(params["limit"]) if params.get("limit") else None
+        if limit is None:
+            return self.data_or_empty(project(self.query(sql, args), names))
+
+        rows = self.query(sql + " LIMIT ?", args + [limit + 1])
+        payload = self.data_or_empty(project(rows[:limit], names))
+        if len(rows) > limit:
+            last = rows[limit - 1]
+            payload["next"] = "%s,%s" % (last["end_bid_time"], last["id"])
+        return payload
+
+    def upcoming(self, params):
+        # the watermark is taken before reading so nothing written during the
+        # query can fall between two syncs
+        sync = now()
+        since = params.get("since")
+        if since:
+            payload = self.changes(since, fields(params, self.columns["auction_creation"]))
+        else:
+            payload = self.paged("status = '2'", (), params)
+        payload["sync"] = sync
+        return payload
+
+    def category(self, params):
+        return self.data_or_empty(self.query("SELECT * FROM category_master ORDER BY id"))
+
+    def history(self, params):
+        return self.paged("user_id = ? AND status = ?", (params.get("user_id", ""), params.get("status", "")), params)
+
+    def changes(self, since, names=None):
+        """Rows touched at or after since: open ones with the columns in names, closed ones by id.
+
+        The comparison is inclusive because updated_at has one-second
+        resolution; the client replaces rows it already has.
+        """
+        rows = self.query("SELECT %s FROM auction_creation WHERE updated_at >= ? "
+                          "ORDER BY end_bid_time, id" % select_list(names, ("id", "status")), (since,))
+        return {"data": project([r for r in rows if r["status"] == "2"], names),
+                "closed": [r["id"] for r in rows if r["status"] != "2"]}
+
+    def auction_detail(self, params):
+        """One auction row by id, e.g. the description a list left out."""
+        names = fields(params, self.columns["auction_creation"])
+        return self.data_or_empty(self.query("SELECT %s FROM auction_creation WHERE id = ?" % select_list(names),
+                                             (params.get("id"),)))
+
+    def login_check(self, params):
+        """loginCheck: the user rows of params["mobile"] under "login".
+
+        photo_url is the stored photo as a URL relative to the API base, so
+        a profile screen can fetch it through the image cache instead of
+        getting the base64 photo column with every check.
+        """
+        names = fields(params, self.columns["user"])
+        columns = None if names is None else [n for n in names if n != "photo_url"]
+        wanted = names is None or "photo_url" in names
+        rows = self.query("SELECT %s FROM `user` WHERE mobile = ? ORDER BY id"
+                          % select_list(columns, ("photo_hash",) if wanted else ()), (params.get("mobile"),))
+        if not rows:
+            return {"msg": [{"status": "404", "msg": "No record found"}]}
+        if wanted:
+            for row in rows:
+                row["photo_url"] = "images/" + row["photo_hash"] if row.get("photo_hash") else None
+        return {"login": project(rows, names)}
+
+    def auction_images(self, params):
+        """Photos of one auction in upload order, as URLs relative to the API base."""
+        names = fields(params, ("auction_id", "url", "width", "height", "bytes"))
+        rows = self.query("SELECT a.auction_id, b.hash, b.width, b.height, b.bytes "
+                          "FROM auction_image a JOIN image_blob b ON b.hash = a.image_hash "
+                          "WHERE a.auction_id = ? ORDER BY a.id", (params.get("auction_id"),))
+        for row in rows:
+            row["url"] = "images/" + row.pop("hash")
+        return self.data_or_empty(project(rows, names))
+
+    def upload_image(self, params, body):
+        """Stores one raw JPEG/PNG body as a photo of params["auction_id"].
+
+        The same bytes sent again, e.g. by a retry, return the same URL and
+        add no second photo.
+        """
+        auction_id = params.get("auction_id")
+        if not auction_id:
+            return {"msg": [{"status": "400", "msg": "auction_id is required"}]}
+        with self.lock:
+            blob = image_store.save_blob(self.db, self.images, body)
+            if blob is None:
+                return {"msg": [{"status": "415", "msg": "Not a JPEG or PNG image"}]}
+            if not self.db.execute("SELECT 1 FROM auction_image WHERE auction_id = ? AND image_hash = ?",
+                                   (auction_id, blob["hash"])).fetchone():
+                self.db.execute("INSERT INTO auction_image (auction_id, image_hash) VALUES (?, ?)",
+                                (auction_id, blob["hash"]))
+            self.db.commit()
+        image = {"auction_id": auction_id, "url": "images/" + blob["hash"], "width": str(blob["width"]),
+                 "height": str(blob["height"]), "bytes": str(blob["bytes"])}
+        return {"msg": [{"status": "200"}], "data": [image]}
+
+    def upload_images(self, params, parts):
+        """Stores every part as a photo of params["auction_id"] in one transaction.
+
+        data has one entry per part, in order; the msg status is 200 when
+        every part was stored and 207 when only some were.
+        """
+        auction_id = params.get("auction_id")
+        if not auction_id:
+            return {"msg": [{"status": "400", "msg": "auction_id is required"}]}
+        if not parts:
+            return {"msg": [{"status": "400", "msg": "no photos in the request"}]}
+        with self.lock:
+            blobs = image_store.save_blobs(self.db, self.images, parts)
+            digests = list({b["hash"] for b in blobs if b})
+            marks = ", ".join("?" * len(digests))
+            existing = {r["image_hash"] for r in self.db.execute(
+                "SELECT image_hash FROM auction_image WHERE auction_id = ? AND image_hash IN (%s)" % marks,
+                [auction_id] + digests)} if digests else set()
+            rows, seen = [], set(existing)
+            for b in blobs:
+                if b and b["hash"] not in seen:
+                    seen.add(b["hash"])
+                    rows.append((auction_id, b["hash"]))
+            self.db.executemany("INSERT INTO auction_image (auction_id, image_hash) VALUES (?, ?)", rows)
+            self.db.commit()
+        data = []
+        for i, b in enumerate(blobs):
+            if b is None:
+                data.append({"part": str(i), "status": "415", "msg": "Not a JPEG or PNG image"})
+            else:
+                data.append({"part": str(i), "status": "200", "auction_id": auction_id,
+                             "url": "images/" + b["hash"], "width": str(b["width"]),
+                             "height": str(b["height"]), "bytes": str(b["bytes"])})
+        stored = sum(1 for b in blobs if b)
+        status = "200" if stored == len(blobs) else "207"
+        return {"msg": [{"status": status, "msg": "%d of %d photos stored" % (stored, len(blobs))}],
+                "data": data}
+
+    def link_images(self, params):
+        """Adds the photos already stored to params["auction_id"]; lists the rest as missing.
+
+        sha256 and phash are comma-separated and parallel, phash entries
+        may be empty. Each photo's dHash is kept whether or not it is
+        stored yet. With near=1, a photo with no exact match takes the
+        closest of the seller's earlier photos within NEAR_BITS bits.
+        """
+        auction_id = params.get("auction_id")
+        digests = [d.strip().lower() for d in (params.get("sha256") or "").split(",") if d.strip()]
+        phashes = [p.strip().lower() for p in (params.get("phash") or "").split(",")]
+        phashes = (phashes + [""] * len(digests))[:len(digests)]
+        if not auction_id or not digests:
+            return {"msg": [{"status": "400", "msg": "auction_id and sha256 are required"}]}
+        if not all(re.fullmatch(r"[0-9a-f]{64}", d) for d in digests) \
+                or not all(re.fullmatch(r"[0-9a-f]{16}|", p) for p in phashes):
+            return {"msg": [{"status": "400", "msg": "malformed hash"}]}
+        near = params.get("near") == "1"
+        with self.lock:
+            self.db.executemany("INSERT OR IGNORE INTO image_phash (hash, phash) VALUES (?, ?)",
+                                [(d, p) for d, p in zip(digests, phashes) if p])
+            marks = ", ".join("?" * len(digests))
+            blobs = {r["hash"]: r for r in self.db.execute(
+                "SELECT * FROM image_blob WHERE hash IN (%s)" % marks, digests)}
+            candidates = self.seller_phashes(auction_id) if near else []
+            linked = {r["image_hash"] for r in self.db.execute(
+                "SELECT image_hash FROM auction_image WHERE auction_id = ?", (auction_id,))}
+            data = []
+            for i, (digest, phash) in enumerate(zip(digests, phashes)):
+                entry = {"part": str(i), "sha256": digest, "status": "missing"}
+                match = digest if digest in blobs else self.closest(phash, candidates) if phash else None
+                if match is not None:
+                    blob = blobs.get(match) or self.db.execute(
+                        "SELECT * FROM image_blob WHERE hash = ?", (match,)).fetchone()
+                    if match not in linked:
+                        linked.add(match)
+                        self.db.execute("INSERT INTO auction_image (auction_id, image_hash) VALUES (?, ?)",
+                                        (auction_id, match))
+                    entry.update({"status": "linked" if match == digest else "similar", "auction_id": auction_id,
+                                  "url": "images/" + match, "width": str(blob["width"]),
+                                  "height": str(blob["height"]), "bytes": str(blob["bytes"]),
+                                  "renditions": ",".join(self.renditions(match))})
+                data.append(entry)
+            self.db.commit()
+        have = sum(1 for d in data if d["status"] != "missing")
+        return {"msg": [{"status": "200", "msg": "%d of %d photos already stored" % (have, len(data))}],
+                "data": data}
+
+    NEAR_BITS = 6
+
+    def seller_phashes(self, auction_id):
+        """(hash, dHash) of the stored photos of every auction by the seller of auction_id."""
+        return [(r["hash"], int(r["phash"], 16)) for r in self.db.execute(
+            "SELECT DISTINCT p.hash, p.phash FROM auction_creation a "
+            "JOIN auction_creation mine ON mine.user_id = a.user_id "
+            "JOIN auction_image i ON i.auction_id = mine.id "
+            "JOIN image_phash p ON p.hash = i.image_hash "
+            "JOIN image_blob b ON b.hash = p.hash "
+            "WHERE a.id = ? AND a.user_id != ''", (auction_id,))]
+
+    def closest(self, phash, candidates):
+        value = int(phash, 16)
+        best = min(candidates, key=lambda c: bin(c[1] ^ value).count("1"), default=None)
+        if best is None or bin(best[1] ^ value).count("1") > self.NEAR_BITS:
+            return None
+        return best[0]
+
+    def upload_start(self, params):
+        """Opens a chunked upload, or returns the open one for the same auction and photo."""
+        auction_id, sha256 = params.get("auction_id"), (params.get("sha256") or "").lower()
+        try:
+            length = int(params.get("length") or 0)
+        except ValueError:
+            length = 0
+        if not auction_id or not re.fullmatch(r"[0-9a-f]{64}", sha256) or length <= 0:
+            return {"msg": [{"status": "400", "msg": "auction_id, sha256 and length are required"}]}
+        with self.lock:
+            row = self.db.execute("SELECT * FROM upload_session WHERE auction_id = ? AND sha256 = ?",
+                                  (auction_id, sha256)).fetchone()
+            if row is None or row["length"] != length:
+                if row is not None:
+                    self.drop_upload(row["id"])
+                upload_id = uuid.uuid4().hex
+                self.db.execute("INSERT INTO upload_session VALUES (?, ?, ?, ?, 0, NULL)",
+                                (upload_id, auction_id, sha256, length))
+                open(self.partial(upload_id), "wb").close()
+                self.db.commit()
+                row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (upload_id,)).fetchone()
+            return self.upload_reply(row, "200")
+
+    def upload_status(self, params):
+        """Where an upload is; a completed one answers offset = length and its image row."""
+        with self.lock:
+            row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (params.get("id"),)).fetchone()
+            if row is None:
+                return {"msg": [{"status": "404", "msg": "Unknown upload"}]}
+            return self.upload_reply(row, "200")
+
+    def upload_chunk(self, params, body, chunk_sha256):
+        """Appends body at params["offset"]; the chunk reaching the full length completes the photo.
+
+        409 means the offset is not the server's (the response has the right
+        one), 422 that the chunk, or the finished photo, failed its hash and
+        was not kept.
+        """
+        with self.lock:
+            row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (params.get("id"),)).fetchone()
+            if row is None:
+                return {"msg": [{"status": "404", "msg": "Unknown upload"}]}
+            if str(row["offset"]) != params.get("offset"):
+                return self.upload_reply(row, "409", "Offset mismatch")
+            if hashlib.sha256(body).hexdigest() != (chunk_sha256 or "").lower():
+                return {"msg": [{"status": "422", "msg": "Chunk hash mismatch"}], "upload": self.upload_state(row)}
+            offset = row["offset"] + len(body)
+            if not body or offset > row["length"]:
+                return {"msg": [{"status": "400", "msg": "Chunk out of range"}], "upload": self.upload_state(row)}
+
+            with open(self.partial(row["id"]), "r+b") as f:
+                f.seek(row["offset"])
+                f.write(body)
+                f.truncate()
+                f.flush()
+                os.fsync(f.fileno())
+            self.db.execute("UPDATE upload_session SET offset = ? WHERE id = ?", (offset, row["id"]))
+            self.db.commit()
+            row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (row["id"],)).fetchone()
+            if offset < row["length"]:
+                return {"msg": [{"status": "200"}], "upload": self.upload_state(row)}
+
+            with open(self.partial(row["id"]), "rb") as f:
+                data = f.read()
+            if hashlib.sha256(data).hexdigest() != row["sha256"]:
+                # some chunk was wrong after all: start the photo over
+                self.db.execute("UPDATE upload_session SET offset = 0 WHERE id = ?", (row["id"],))
+                open(self.partial(row["id"]), "wb").close()
+                self.db.commit()
+                row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (row["id"],)).fetchone()
+                return {"msg": [{"status": "422", "msg": "Photo hash mismatch"}], "upload": self.upload_state(row)}
+            blob = image_store.save_blob(self.db, self.images, data)
+            if blob is None:
+                state = self.upload_state(row)
+                self.drop_upload(row["id"])
+                self.db.commit()
+                return {"msg": [{"status": "415", "msg": "Not a JPEG or PNG image"}], "upload": state}
+            if not self.db.execute("SELECT 1 FROM auction_image WHERE auction_id = ? AND image_hash = ?",
+                                   (row["auction_id"], blob["hash"])).fetchone():
+                self.db.execute("INSERT INTO auction_image (auction_id, image_hash) VALUES (?, ?)",
+                                (row["auction_id"], blob["hash"]))
+            # kept, complete, so a client that missed this answer can still ask
+            self.db.execute("UPDATE upload_session SET image_hash = ? WHERE id = ?", (blob["hash"], row["id"]))
+            self.db.commit()
+            try:
+                os.remove(self.partial(row["id"]))
+            except OSError:
+                pass
+            row = self.db.execute("SELECT * FROM upload_session WHERE id = ?", (row["id"],)).fetchone()
+            return self.upload_reply(row, "200")
+
+    def partial(self, upload_id):
+        directory = os.path.join(self.images.root, "partial")
+        os.makedirs(directory, exist_ok=True)
+        return os.path.join(directory, upload_id)
+
+    def drop_upload(self, upload_id):
+        self.db.execute("DELETE FROM upload_session WHERE id = ?", (upload_id,))
+        try:
+            os.remove(self.partial(upload_id))
+        except OSError:
+            pass
+
+    def upload_reply(self, row, status, msg=None):
+        """The session's state under status, with the image row once the photo is stored."""
+        head = {"status": status}
+        if msg:
+            head["msg"] = msg
+        reply = {"msg": [head], "upload": self.upload_state(row)}
+        if row["image_hash"]:
+            blob = self.db.execute("SELECT * FROM image_blob WHERE hash = ?", (row["image_hash"],)).fetchone()
+            reply["data"] = [{"auction_id": row["auction_id"], "url": "images/" + blob["hash"],
+                              "width": str(blob["width"]), "height": str(blob["height"]),
+                              "bytes": str(blob["bytes"])}]
+        return reply
+
+    @staticmethod
+    def upload_state(row):
+        return {"id": row["id"], "offset": str(row["offset"]), "length": str(row["length"])}
+
+    # rendition name -> longest side, as ImageRenditions has them
+    RENDITIONS = {"thumb": 240, "medium": 720}
+
+    def upload_renditions(self, params, parts):
+        """Stores the renditions of the photo params["hash"], one per (size, bytes) part.
+
+        A rendition must be one of RENDITIONS, no longer on either side than
+        that size and smaller than the photo. Only params["user_id"] being the
+        photo's uploader may add them, and the first one stored for a size
+        stays: images/<hash>?size= is served as immutable, so it must never
+        change. Sending the same rendition again is answered 200, a different
+        one 409.
+        """
+        digest = params.get("hash")
+        with self.lock:
+            photo = self.db.execute("SELECT * FROM image_blob WHERE hash = ?", (digest,)).fetchone()
+            if photo is None:
+                return {"msg": [{"status": "404", "msg": "Unknown image"}]}
+            owner = self.photo_owner(digest)
+            if owner is None or owner != params.get("user_id"):
+                return {"msg": [{"status": "403", "msg": "Only the photo's uploader can add its renditions"}]}
+            blobs = image_store.save_blobs(self.db, self.images, [data for _, data in parts])
+            data = []
+            for i, ((size, _), blob) in enumerate(zip(parts, blobs)):
+                entry = {"part": str(i), "size": size}
+                side = self.RENDITIONS.get(size)
+                if blob is None:
+                    entry.update({"status": "415", "msg": "Not a JPEG or PNG image"})
+                elif side is None or max(blob["width"], blob["height"]) > side \
+                        or blob["width"] >= photo["width"] or blob["height"] >= photo["height"]:
+                    entry.update({"status": "422", "msg": "Not a %s rendition of this photo" % size})
+                else:
+                    stored = self.db.execute("SELECT rendition_hash FROM image_rendition WHERE hash = ? AND size = ?",
+                                             (digest, size)).fetchone()
+                    if stored is not None and stored["rendition_hash"] != blob["hash"]:
+                        entry.update({"status": "409", "msg": "A %s rendition of this photo is already stored" % size})
+                        data.append(entry)
+                        continue
+                    if stored is None:
+                        self.db.execute("INSERT INTO image_rendition (hash, size, rendition_hash) VALUES (?, ?, ?)",
+                                        (digest, size, blob["hash"]))
+                    entry.update({"status": "200", "url": "images/%s?size=%s" % (digest, size),
+                                  "width": str(blob["width"]), "height": str(blob["height"]),
+                                  "bytes": str(blob["bytes"])})
+                data.append(entry)
+            self.db.commit()
+        stored = sum(1 for d in data if d["status"] == "200")
+        status = "200" if data and stored == len(data) else "207"
+        return {"msg": [{"status": status, "msg": "%d of %d renditions stored" % (stored, len(data))}],
+                "data": data}
+
+    def photo_owner(self, digest):
+        """Id of the user who uploaded digest, or None; the caller holds the lock.
+
+        That is the seller of the first auction it was added to, or for a
+        profile photo the user it belongs to.
+        """
+        row = self.db.execute("SELECT c.user_id FROM auction_image a JOIN auction_creation c ON c.id = a.auction_id "
+                              "WHERE a.image_hash = ? ORDER BY a.id LIMIT 1", (digest,)).fetchone()
+        if row is None:
+            row = self.db.execute("SELECT id AS user_id FROM `user` WHERE photo_hash = ? ORDER BY id LIMIT 1",
+                                  (digest,)).fetchone()
+        return None if row is None else str(row["user_id"])
+
+    def renditions(self, digest):
+        """Sizes digest has renditions at; the caller holds the lock."""
+        return [r["size"] for r in self.db.execute(
+            "SELECT size FROM image_rendition WHERE hash = ? ORDER BY size DESC", (digest,))]
+
+    def image(self, digest, size=None):
+        """(content type, bytes, hash served) of a stored image or its rendition, or None.
+
+        A size the photo has no rendition for gets the photo itself.
+        """
+        if size:
+            rows = self.query("SELECT rendition_hash FROM image_rendition WHERE hash = ? AND size = ?",
+                              (digest, size))
+            if rows:
+                digest = rows[0]["rendition_hash"]
+        rows = self.query("SELECT content_type FROM image_blob WHERE hash = ?", (digest,))
+        data = self.images.get(digest) if rows else None
+        return (rows[0]["content_type"], data, digest) if data is not None else None
+
+    def idempotent(self, endpoint, params, write):
+        """Runs write(params) once per idempotency_key and replays its response."""
+        key = params.pop("idempotency_key", None)
+        with self.lock:
+            if key:
+                row = self.db.execute("SELECT response FROM request_log WHERE idempotency_key = ?",
+                                      (key,)).fetchone()
+                if row:
+                    return json.loads(row["response"])
+            payload = write(params)
+            if key:
+                self.db.execute("INSERT INTO request_log VALUES (?, ?, ?)",
+                                (key, endpoint, json.dumps(payload)))
+            self.db.commit()
+        return payload
+
+    def insert_bid(self, params):
+        def write(p):
+            self.db.execute("INSERT INTO bids_master (user_id, auction_id, bids, isActive) "
+                            "VALUES (?, ?, ?, 1)", (p["user_id"], p["auction_id"], p["bids"]))
+            return {"msg": [{"status": "200", "msg": "Bid placed successfully"}]}
+        payload = self.idempotent("Biding/insert", params, write)
+        with self.bids_changed:
+            self.bids_changed.notify_all()
+        return payload
+
+    def last_bid_id(self, auction_id):
+        rows = self.query("SELECT MAX(id) AS id FROM bids_master WHERE auction_id = ?", (auction_id,))
+        return int(rows[0]["id"] or 0)
+
+    def bids_after(self, auction_id, last_id):
+        return self.query("SELECT b.id, b.auction_id, u.first_name, b.bids FROM bids_master b "
+                          "LEFT JOIN user u ON u.id = b.user_id "
+                          "WHERE b.auction_id = ? AND b.id > ? ORDER BY b.id",
+                          (auction_id, last_id))
+
+    def create_auction(self, params):
+        def write(p):
+            return {"msg": [{"status": "200", "id": str(self.write_auction(p))}]}
+        return self.idempotent("Auction/create", params, write)
+
+    def update_auction(self, params):
+        if "id" not in params:
+            return {"msg": [{"status": "400", "msg": "id is required"}]}
+
+        def write(p):
+            self.write_auction(p)
+            return {"msg": [{"status": "200"}]}
+        return self.idempotent("Auction/update", params, write)
+
+    def upsert_auction(self, fields):
+        with self.lock:
+            self.write_auction(fields)
+            self.db.commit()
+        return {"msg": [{"status": "200"}]}
+
+    def write_auction(self, fields):
+        """Inserts or, when fields has a known id, updates an auction row;
+        returns the row's id."""
+        fields = {k: v for k, v in fields.items() if k in AUCTION_COLUMNS}
+        fields["updated_at"] = now()
+        if "id" in fields and self.db.execute(
+                "SELECT 1 FROM auction_creation WHERE id = ?", (fields["id"],)).fetchone():
+            sets = ", ".join("`%s` = ?" % c for c in fields)
+            self.db.execute("UPDATE auction_creation SET %s WHERE id = ?" % sets,
+                            list(fields.values()) + [fields["id"]])
+            return fields["id"]
+        else:
+            cols = ", ".join("`%s`" % c for c in fields)
+            marks = ", ".join("?" * len(fields))
+            return self.db.execute("INSERT INTO auction_creation (%s) VALUES (%s)" % (cols, marks),
+                                   list(fields.values())).lastrowid
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+    backend = None
+    routes = {}
+    post_routes = {}
+    stats = defaultdict(lambda: {"200": 0, "304": 0})
+    # Last-Modified per path, advanced whenever the payload's ETag changes
+    modified = {}
+    keepalive_seconds = 15
+
+    def log_message(self, fmt, *args):
+        pass
+
+    def do_GET(self):
+        url = urlparse(self.path)
+        if url.path == "/__stats":
+            return self.send_json(200, dict(self.stats))
+        if url.path == "/Biding/stream":
+            return self.stream_bids({k: v[0] for k, v in parse_qs(url.query).items()})
+        if url.path.startswith("/images/"):
+            size = parse_qs(url.query).get("size", [None])[0]
+            return self.send_image(url.path[len("/images/"):], size)
+        if url.path == "/Upload/status":
+            # live state, never revalidated from a cache
+            return self.send_json(200, self.backend.upload_status({k: v[0] for k, v in parse_qs(url.query).items()}))
+        route = self.routes.get(url.path.lstrip("/"))
+        if route is None:
+            return self.send_json(404, {"msg": [{"status": "404", "msg": "Unknown endpoint"}]})
+        params = {k: v[0] for k, v in parse_qs(url.query).items()}
+        try:
+            payload = getattr(self.backend, route)(params)
+        except FieldError as e:
+            return self.send_json(200, {"msg": [{"status": "400", "msg": str(e)}]})
+        self.send_cached(url.path, payload)
+
+    def do_POST(self):
+        url = urlparse(self.path)
+        path = url.path
+        if path == "/Image/upload":
+            query = {k: v[0] for k, v in parse_qs(url.query).items()}
+            return self.send_json(200, self.backend.upload_image(query, self.body()))
+        if path == "/Upload/chunk":
+            query = {k: v[0] for k, v in parse_qs(url.query).items()}
+            length = int(self.headers.get("Content-Length") or 0)
+            body = self.body()
+            if len(body) < length:
+                # the connection dropped mid-chunk: nothing to answer, nothing kept
+                self.close_connection = True
+                return
+            return self.send_json(200, self.backend.upload_chunk(query, body, self.headers.get("Upload-Chunk-SHA256")))
+        if path == "/Image/batch":
+            query = {k: v[0] for k, v in parse_qs(url.query).items()}
+            return self.send_json(200, self.backend.upload_images(query, self.multipart()))
+        if path == "/Image/renditions":
+            query = {k: v[0] for k, v in parse_qs(url.query).items()}
+            return self.send_json(200, self.backend.upload_renditions(query, self.form_parts()))
+        # read the body even when unused, or it would be parsed as the next request
+        params = self.form()
+        if path == "/__stats/reset":
+            self.stats.clear()
+            return self.send_json(200, {"msg": [{"status": "200"}]})
+        if path == "/__auction":
+            return self.send_json(200, self.backend.upsert_auction(params))
+        route = self.post_routes.get(path.lstrip("/"))
+        if route is not None:
+            try:
+                return self.send_json(200, getattr(self.backend, route)(params))
+            except FieldError as e:
+                return self.send_json(200, {"msg": [{"status": "400", "msg": str(e)}]})
+        self.send_json(404, {"msg": [{"status": "404", "msg": "Unknown endpoint"}]})
+
+    def stream_bids(self, params):
+        auction_id = params.get("auction_id")
+        if not auction_id:
+            return self.send_json(400, {"msg": [{"status": "400", "msg": "auction_id is required"}]})
+        last_event_id = self.headers.get("Last-Event-ID")
+        backend = self.backend
+
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream; charset=utf-8")
+        self.send_header("Cache-Control", "no-cache")
+        # the body has no length, so its end is the end of the connection
+        self.send_header("Connection", "close")
+        self.close_connection = True
+        self.end_headers()
+        try:
+            if last_event_id:
+                last = int(last_event_id)
+            else:
+                last = backend.last_bid_id(auction_id)
+                self.wfile.write(("id: %d\n\n" % last).encode())
+                self.wfile.flush()
+            while True:
+                # querying under the condition means a bid committed after the
+                # query cannot notify before we are waiting
+                notified = True
+                with backend.bids_changed:
+                    rows = backend.bids_after(auction_id, last)
+                    if not rows:
+                        notified = backend.bids_changed.wait(self.keepalive_seconds)
+                for row in rows:
+                    last = int(row["id"])
+                    self.wfile.write(("id: %d\ndata: %s\n\n" % (last, json.dumps(row))).encode())
+                if not notified:
+                    self.wfile.write(b": keepalive\n\n")
+                self.wfile.flush()
+        except (BrokenPipeError, ConnectionResetError):
+            pass
+
+    def send_image(self, digest, size=None):
+        """Image bytes by hash. The content never changes, so it is cacheable for a year.
+
+        Asked for a size it has no rendition of, the photo is served whole
+        for a day only, until the rendition arrives.
+        """
+        image = self.backend.image(digest, size)
+        if image is None:
+            return self.send_json(404, {"msg": [{"status": "404", "msg": "Unknown image"}]})
+        served = image[2]
+        etag = '"%s"' % served
+        lifetime = "public, max-age=86400" if size and served == digest else "public, max-age=31536000, immutable"
+        headers = {"ETag": etag, "Cache-Control": lifetime}
+        if etag in [t.strip() for t in (self.headers.get("If-None-Match") or "").split(",")]:
+            self.send_response(304)
+            for k, v in headers.items():
+                self.send_header(k, v)
+            self.end_headers()
+            return
+        content_type, data, _ = image
+        self.send_response(200)
+        self.send_header("Content-Type", content_type)
+        self.send_header("Content-Length", str(len(data)))
+        for k, v in headers.items():
+            self.send_header(k, v)
+        self.end_headers()
+        self.wfile.write(data)
+
+    def body(self):
+        length = int(self.headers.get("Content-Length") or 0)
+        return self.rfile.read(length)
+
+    def multipart(self):
+        """Contents of the parts of a multipart/form-data body, in order."""
+        return [content for _, content in self.form_parts()]
+
+    def form_parts(self):
+        """(field name, contents) of the parts of a multipart/form-data body, in order."""
+        body = self.body()
+        match = re.search(r'boundary="?([^";]+)"?', self.headers.get("Content-Type") or "")
+        if not match:
+            return []
+        parts = []
+        for chunk in body.split(b"--" + match.group(1).encode())[1:]:
+            if chunk.startswith(b"--"):
+                break
+            head, _, content = chunk.partition(b"\r\n\r\n")
+            name = re.search(rb'name="([^"]*)"', head)
+            # the CRLF before the next delimiter belongs to the delimiter
+            parts.append((name.group(1).decode() if name else "",
+                          content[:-2] if content.endswith(b"\r\n") else content))
+        return parts
+
+    def form(self):
+        body = self.body().decode()
+        return {k: v[0] for k, v in parse_qs(body, keep_blank_values=True).items()}
+
+    def send_cached(self, path, payload):
+        body = json.dumps(payload).encode()
+        etag = '"%s"' % hashlib.sha1(body).hexdigest()
+        key = self.path
+        previous = self.modified.get(key)
+        if previous is None or previous[0] != etag:
+            self.modified[key] = previous = (etag, formatdate(usegmt=True))
+        last_modified = previous[1]
+
+        if self.not_modified(etag, last_modified):
+            self.stats[path]["304"] += 1
+            self.send_response(304)
+            self.send_header("ETag", etag)
+            self.send_header("Last-Modified", last_modified)
+            self.end_headers()
+            return
+        self.stats[path]["200"] += 1
+        self.send_json(200, payload, body, {"ETag": etag, "Last-Modified": last_modified,
+                                            "Cache-Control": "no-cache"})
+
+    def not_modified(self, etag, last_modified):
+        if_none_match = self.headers.get("If-None-Match")
+        if if_none_match is not None:
+            return etag in [t.strip() for t in if_none_match.split(",")]
+        if_modified_since = self.headers.get("If-Modified-Since")
+        if if_modified_since is not None:
+            try:
+                return parsedate_to_datetime(last_modified) <= parsedate_to_datetime(if_modified_since)
+            except (TypeError, ValueError):
+                return False
+        return False
+
+    def send_json(self, code, payload, body=None, headers=None):
+        body = body if body is not None else json.dumps(payload).encode()
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json; charset=utf-8")
+        self.send_header("Content-Length", str(len(body)))
+        for k, v in (headers or {}).items():
+            self.send_header(k, v)
+        self.end_headers()
+        self.wfile.write(body)
+
+
+Handler.routes = {
+    "Auction/upcoming": "upcoming",
+    "Category/list": "category",
+    "Auction/history": "history",
+    "Auction/images": "auction_images",
+    "Auction/detail": "auction_detail",
+}
+
+Handler.post_routes = {
+    "Biding/insert": "insert_bid",
+    "Auction/create": "create_auction",
+    "Auction/update": "update_auction",
+    "Upload/start": "upload_start",
+    "Image/link": "link_images",
+    "Login/check": "login_check",
+}
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--port", type=int, default=8080)
+    parser.add_argument("--dump", default="auction_biding-3.sql")
+    parser.add_argument("--cert", help="PEM certificate; serve HTTPS")
+    parser.add_argument("--key", help="PEM private key for --cert")
+    parser.add_argument("--images", default=os.path.join(tempfile.gettempdir(), "standin_images"),
+                        help="directory of the image store")
+    args = parser.parse_args()
+
+    db = load_dump(args.dump)
+    images = image_store.BlobStore(args.images)
+    image_store.migrate(db, images)
+    Handler.backend = Backend(db, images)
+    server = ThreadingHTTPServer(("0.0.0.0", args.port), Handler)
+    scheme = "http"
+    if args.cert:
+        context = ssl.SSLContext(ssl.PROTOCOL_TLS_SERVER)
+        context.load_cert_chain(args.cert, args.key)
+        # handshake in the handler thread, not in the accept loop
+        server.socket = context.wrap_socket(server.socket, server_side=True, do_handshake_on_connect=False)
+        scheme = "https"
+    print("stand-in backend on %s://localhost:%d/" % (scheme, args.port), flush=True)
+    server.serve_forever()
+
+
+if __name__ == "__main__":
+    main()